@@ -1,55 +1,136 @@
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Cart - 简单的购物车单例类
  *
  * 设计说明：
- * - 使用单例模式（`getInstance()`）保证全局唯一购物车实例。
- * - 使用内部静态类 `CartItem` 表示购物项，内部以 `List<CartItem>` 存储。
- * - 提供增、删、清空、获取列表和计算总价的便捷方法。
+ * - 使用单例模式（`getInstance()`）保证全局唯一购物车实例，实例在类加载时创建，多线程访问安全。
+ * - 购物项按商品 id 存放在 `LinkedHashMap` 中（保持加入顺序），按 id 查询和修改数量都是 O(1)。
+ * - 金额一律以 long 类型的分表示（见 `Money`），总价在每次增删改时增量维护，获取总价不需要遍历购物项。
+ * - 所有方法在购物车对象上同步，可在后台线程中使用；`getItems()` 返回只读快照，
+ *   `CartItem` 不可变，修改数量需通过购物车的方法进行。
+ * - 每次修改后向监听器发布 `CartEvent`，列出哪些商品被加入、改数量、移除或清空，以及新的总价；
+ *   `batch()` 中的多次修改合并为一个事件。事件在修改所在的线程、释放锁之后发出。
  */
 public class Cart {
     // 单例实例
-    private static Cart instance;
-    // 存放购物项的列表
-    private List<CartItem> items;
+    private static final Cart instance = new Cart();
+    // 商品 id -> 购物项（按加入顺序）
+    private final Map<String, CartItem> items = new LinkedHashMap<>();
+    // 所有购物项的总价（分）
+    private long totalFen;
+    // 购物车监听器
+    private final List<CartListener> listeners = new CopyOnWriteArrayList<>();
+    // 尚未发布的变化（商品 id -> 变化），以及当前 batch() 的嵌套层数
+    private final Map<String, Change> pendingChanges = new LinkedHashMap<>();
+    private int batchDepth;
 
-    // 私有构造函数：初始化商品列表
+    // 私有构造函数
     private Cart() {
-        items = new ArrayList<>();
     }
 
     /**
-     * 获取全局唯一购物车实例（懒汉式单例）
+     * 获取全局唯一购物车实例
      *
      * @return Cart 单例实例
      */
     public static Cart getInstance() {
-        if (instance == null) {
-            instance = new Cart();
-        }
         return instance;
     }
 
+    /**
+     * 注册购物车监听器
+     *
+     * @param listener 监听器，在修改购物车的线程上调用
+     */
+    public void addListener(CartListener listener) {
+        listeners.add(listener);
+    }
+
+    /** 移除购物车监听器 */
+    public void removeListener(CartListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 在一次批量操作中执行多次修改：期间持有购物车锁，结束后只发布一个合并后的事件
+     *
+     * @param edits 对购物车的修改
+     */
+    public void batch(Runnable edits) {
+        CartEvent event;
+        synchronized (this) {
+            batchDepth++;
+            try {
+                edits.run();
+            } finally {
+                batchDepth--;
+                event = takeEvent();
+            }
+        }
+        fire(event);
+    }
+
     /**
      * 向购物车添加商品：若已存在同 id 项则累计数量，否则新增条目。
      *
      * @param id 商品唯一标识
      * @param name 商品名称
-     * @param price 单价
+     * @param priceFen 单价（分）
      * @param quantity 数量（应为正数）
      */
-    public void addItem(String id, String name, double price, int quantity) {
-        // 若已存在同 id 的条目则增加数量并返回
-        for (CartItem item : items) {
-            if (item.getId().equals(id)) {
-                item.setQuantity(item.getQuantity() + quantity);
-                return;
+    public void addItem(String id, String name, long priceFen, int quantity) {
+        CartEvent event;
+        synchronized (this) {
+            CartItem existing = items.get(id);
+            if (existing != null) {
+                put(new CartItem(id, existing.getName(), existing.getPriceFen(), existing.getQuantity() + quantity));
+            } else {
+                put(new CartItem(id, name, priceFen, quantity));
+            }
+            event = takeEvent();
+        }
+        fire(event);
+    }
+
+    /**
+     * 设置指定商品的数量：数量 <= 0 时移除该商品，商品不在购物车中时新增条目。
+     *
+     * @param id 商品唯一标识
+     * @param name 商品名称（新增条目时使用）
+     * @param priceFen 单价（分，新增条目时使用）
+     * @param quantity 新数量
+     */
+    public void setQuantity(String id, String name, long priceFen, int quantity) {
+        CartEvent event;
+        synchronized (this) {
+            CartItem existing = items.get(id);
+            if (quantity <= 0) {
+                remove(id, ChangeType.REMOVED);
+            } else if (existing != null) {
+                put(new CartItem(id, existing.getName(), existing.getPriceFen(), quantity));
+            } else {
+                put(new CartItem(id, name, priceFen, quantity));
             }
+            event = takeEvent();
         }
-        // 否则新增条目
-        items.add(new CartItem(id, name, price, quantity));
+        fire(event);
+    }
+
+    /**
+     * 获取指定商品在购物车中的数量
+     *
+     * @param id 商品唯一标识
+     * @return 数量，不在购物车中时返回 0
+     */
+    public synchronized int getQuantity(String id) {
+        CartItem item = items.get(id);
+        return item != null ? item.getQuantity() : 0;
     }
 
     /**
@@ -58,49 +139,199 @@ public class Cart {
      * @param id 要移除的商品 id
      */
     public void removeItem(String id) {
-        items.removeIf(item -> item.getId().equals(id));
+        CartEvent event;
+        synchronized (this) {
+            remove(id, ChangeType.REMOVED);
+            event = takeEvent();
+        }
+        fire(event);
     }
 
     /** 清空购物车 */
     public void clear() {
-        items.clear();
+        CartEvent event;
+        synchronized (this) {
+            for (CartItem item : items.values()) {
+                record(item.getId(), item.getQuantity(), 0, ChangeType.CLEARED);
+            }
+            items.clear();
+            totalFen = 0;
+            event = takeEvent();
+        }
+        fire(event);
+    }
+
+    /**
+     * 取出购物车中的全部商品并清空（原子操作，只发布一个事件）
+     *
+     * @return 取出的商品（按加入顺序）
+     */
+    public List<CartItem> drain() {
+        List<CartItem> drained = new ArrayList<>();
+        batch(() -> {
+            drained.addAll(items.values());
+            clear();
+        });
+        return Collections.unmodifiableList(drained);
+    }
+
+    /** 购物车是否为空 */
+    public synchronized boolean isEmpty() {
+        return items.isEmpty();
     }
 
     /**
-     * 获取购物车内部存放的商品列表引用（注意：直接修改该列表可能导致不一致）
+     * 获取购物车中商品的只读快照（按加入顺序），之后对购物车的修改不会反映到该列表中
      *
      * @return 商品列表
      */
-    public List<CartItem> getItems() {
-        return items;
+    public synchronized List<CartItem> getItems() {
+        return Collections.unmodifiableList(new ArrayList<>(items.values()));
     }
 
     /**
-     * 计算购物车中所有商品的总价（不包含税费或运费）
+     * 获取购物车中所有商品的总价（不包含税费或运费）
      *
-     * @return 总价
+     * @return 总价（分）
      */
-    public double getTotalPrice() {
-        double total = 0;
-        for (CartItem item : items) {
-            total += item.getPrice() * item.getQuantity();
+    public synchronized long getTotalFen() {
+        return totalFen;
+    }
+
+    // 写入购物项、增量更新总价并记录变化（调用方已持有锁）
+    private void put(CartItem item) {
+        CartItem previous = items.put(item.getId(), item);
+        if (previous != null) {
+            totalFen -= previous.getLineFen();
+        }
+        totalFen += item.getLineFen();
+        record(item.getId(), previous != null ? previous.getQuantity() : 0, item.getQuantity(),
+                previous != null ? ChangeType.QUANTITY_CHANGED : ChangeType.ADDED);
+    }
+
+    // 移除购物项、增量更新总价并记录变化（调用方已持有锁）
+    private void remove(String id, ChangeType type) {
+        CartItem removed = items.remove(id);
+        if (removed != null) {
+            totalFen -= removed.getLineFen();
+            record(id, removed.getQuantity(), 0, type);
         }
-        return total;
+    }
+
+    // 记录一次变化：同一商品的多次变化合并为一条（保留最初的数量与最终的数量）
+    private void record(String id, int oldQuantity, int newQuantity, ChangeType type) {
+        Change previous = pendingChanges.get(id);
+        if (previous != null) {
+            oldQuantity = previous.getOldQuantity();
+            if (type != ChangeType.CLEARED) {
+                // 合并后按数量变化重新判断类型
+                type = oldQuantity == 0 ? ChangeType.ADDED
+                        : newQuantity == 0 ? ChangeType.REMOVED : ChangeType.QUANTITY_CHANGED;
+            }
+        }
+        pendingChanges.put(id, new Change(type, id, oldQuantity, newQuantity));
+    }
+
+    // 取出待发布的事件：批量操作进行中或没有实际变化时返回 null（调用方已持有锁）
+    private CartEvent takeEvent() {
+        if (batchDepth > 0 || pendingChanges.isEmpty()) {
+            return null;
+        }
+        List<Change> changes = new ArrayList<>(pendingChanges.size());
+        for (Change change : pendingChanges.values()) {
+            if (change.getOldQuantity() != change.getNewQuantity()) {
+                changes.add(change);
+            }
+        }
+        pendingChanges.clear();
+        return changes.isEmpty() ? null : new CartEvent(changes, totalFen);
+    }
+
+    // 在锁外通知监听器
+    private void fire(CartEvent event) {
+        if (event == null) {
+            return;
+        }
+        for (CartListener listener : listeners) {
+            listener.cartChanged(event);
+        }
+    }
+
+    /**
+     * 购物车监听器
+     */
+    public interface CartListener {
+        void cartChanged(CartEvent event);
     }
 
     /**
-     * 表示购物车中的单个商品条目
+     * 变化类型：加入新商品、修改数量、移除商品、清空购物车
+     */
+    public enum ChangeType {
+        ADDED, QUANTITY_CHANGED, REMOVED, CLEARED
+    }
+
+    /**
+     * 单个商品的一次变化
+     */
+    public static class Change {
+        private final ChangeType type;
+        private final String id;
+        private final int oldQuantity;
+        private final int newQuantity;
+
+        public Change(ChangeType type, String id, int oldQuantity, int newQuantity) {
+            this.type = type;
+            this.id = id;
+            this.oldQuantity = oldQuantity;
+            this.newQuantity = newQuantity;
+        }
+
+        /** 获取变化类型 */
+        public ChangeType getType() { return type; }
+
+        /** 获取商品 id */
+        public String getId() { return id; }
+
+        /** 获取变化前的数量（新加入时为 0） */
+        public int getOldQuantity() { return oldQuantity; }
+
+        /** 获取变化后的数量（移除或清空后为 0） */
+        public int getNewQuantity() { return newQuantity; }
+    }
+
+    /**
+     * 购物车变化事件：一次修改（或一次批量操作）中所有商品的变化，以及变化后的总价
+     */
+    public static class CartEvent {
+        private final List<Change> changes;
+        private final long totalFen;
+
+        public CartEvent(List<Change> changes, long totalFen) {
+            this.changes = Collections.unmodifiableList(changes);
+            this.totalFen = totalFen;
+        }
+
+        /** 获取各商品的变化（按发生顺序） */
+        public List<Change> getChanges() { return changes; }
+
+        /** 获取变化后的总价（分） */
+        public long getTotalFen() { return totalFen; }
+    }
+
+    /**
+     * 表示购物车中的单个商品条目（不可变）
      */
     public static class CartItem {
-        private String id;
-        private String name;
-        private double price;
-        private int quantity;
+        private final String id;
+        private final String name;
+        private final long priceFen;
+        private final int quantity;
 
-        public CartItem(String id, String name, double price, int quantity) {
+        public CartItem(String id, String name, long priceFen, int quantity) {
             this.id = id;
             this.name = name;
-            this.price = price;
+            this.priceFen = priceFen;
             this.quantity = quantity;
         }
 
@@ -110,18 +341,21 @@ public class Cart {
         /** 获取商品名称 */
         public String getName() { return name; }
 
-        /** 获取商品单价 */
-        public double getPrice() { return price; }
+        /** 获取商品单价（分） */
+        public long getPriceFen() { return priceFen; }
 
         /** 获取商品数量 */
         public int getQuantity() { return quantity; }
 
-        /** 设置商品数量（调用方应保证数量合理） */
-        public void setQuantity(int quantity) { this.quantity = quantity; }
-        
+        /** 获取本条目小计（分） */
+        public long getLineFen() {
+            return priceFen * quantity;
+        }
+
         @Override
         public String toString() {
-            return String.format("%s - %.2f x %d", name, price, quantity);
+            StringBuilder sb = new StringBuilder(name).append(" - ");
+            return Money.appendTo(sb, priceFen).append(" x ").append(quantity).toString();
         }
     }
 }
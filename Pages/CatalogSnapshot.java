@@ -0,0 +1,373 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CatalogSnapshot - 保存在本地磁盘上的药品目录快照（内存映射只读访问）
+ *
+ * 文件格式（大端）：
+ * - 头部：int 魔数、int 格式版本、long 目录版本、int 行数、long 行偏移表位置
+ * - 数据区：每行依次为 id、名称、类别三个字符串字段（每个为 [unsigned short 长度][UTF-8 字节]），
+ *   以及 long 单价（分）与 int 库存（-1 表示未知）
+ * - 行偏移表：每行一个 int，指向该行在文件中的起始位置
+ *
+ * 设计说明：
+ * - 打开快照时只做内存映射，不把数据读入堆内存，即使目录很大也能立即显示。
+ * - 快照以 `catalog.<版本>.<序号>.snap` 命名，先写临时文件再改名，写入过程中崩溃不会留下损坏的快照；
+ *   序号每次写入递增，新快照总是写到新的文件名，不替换已有的文件（Windows 上无法替换仍被映射的文件，
+ *   旧版服务器每次全量下载的版本都是 0）。打开时选择版本最高、同版本中序号最大的有效文件；
+ *   旧文件在切换到新快照后删除，仍被映射而删除失败的文件下次再删。
+ * - 实现 `PagedCatalogModel.PageSource`，可直接作为分页表格模型的数据源；
+ *   按类别过滤时为每个类别懒加载一个行号索引。价格与库存以数值保存，分页读取时才格式化为显示文本，
+ *   整体读入内存（`readAll`）时直接交出数值。
+ */
+public class CatalogSnapshot implements PagedCatalogModel.PageSource {
+    private static final int MAGIC = 0x41534353; // "ASCS"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 8;
+    private static final String FILE_PREFIX = "catalog.";
+    private static final String FILE_SUFFIX = ".snap";
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final long version;
+    // 文件名中的序号（旧格式的文件名没有序号，为 0）
+    private final long generation;
+    private final int rowCount;
+    private final int indexOffset;
+    // 类别 -> 该类别的行号（按需构建）
+    private final Map<String, int[]> categoryRows = new HashMap<>();
+
+    private CatalogSnapshot(File file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        this.generation = generationOf(file);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("快照文件格式错误: " + file);
+        }
+        this.version = buffer.getLong(8);
+        this.rowCount = buffer.getInt(16);
+        long index = buffer.getLong(20);
+        if (rowCount < 0 || index < HEADER_SIZE || index + 4L * rowCount != buffer.capacity()) {
+            throw new IOException("快照文件不完整: " + file);
+        }
+        this.indexOffset = (int) index;
+    }
+
+    /**
+     * 快照文件默认存放目录（用户主目录下的 .ascentsys）
+     */
+    public static File defaultDirectory() {
+        return new File(System.getProperty("user.home"), ".ascentsys");
+    }
+
+    /**
+     * 打开目录中版本最高的有效快照
+     *
+     * @param directory 快照目录
+     * @return 快照，不存在或均已损坏时返回 null
+     */
+    public static CatalogSnapshot openLatest(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return null;
+        }
+        CatalogSnapshot latest = null;
+        for (File f : files) {
+            try {
+                CatalogSnapshot snapshot = open(f);
+                if (latest == null || snapshot.version > latest.version
+                        || snapshot.version == latest.version && snapshot.generation > latest.generation) {
+                    latest = snapshot;
+                }
+            } catch (IOException e) {
+                // 跳过损坏或不完整的快照
+                e.printStackTrace();
+            }
+        }
+        return latest;
+    }
+
+    // "catalog.<版本>.<序号>.snap" 中的序号，旧格式 "catalog.<版本>.snap" 或无法解析时为 0
+    private static long generationOf(File f) {
+        String name = f.getName();
+        String middle = name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length());
+        int dot = middle.lastIndexOf('.');
+        if (dot < 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(middle.substring(dot + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // 目录中已有快照的最大序号 + 1
+    private static long nextGeneration(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        long max = 0;
+        if (files != null) {
+            for (File f : files) {
+                max = Math.max(max, generationOf(f));
+            }
+        }
+        return max + 1;
+    }
+
+    /**
+     * 以只读内存映射方式打开快照文件
+     */
+    public static CatalogSnapshot open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CatalogSnapshot(file, buffer);
+        }
+    }
+
+    /** 获取快照对应的目录版本 */
+    public long getVersion() { return version; }
+
+    /** 获取商品总行数 */
+    public int getRowCount() { return rowCount; }
+
+    /**
+     * 读取指定行用于显示
+     *
+     * @param row 行号
+     * @return 由 `PagedCatalogModel.displayRow` 创建的行
+     */
+    public Object[] readRow(int row) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(buffer.getInt(indexOffset + 4 * row));
+        return PagedCatalogModel.displayRow(readString(view), readString(view), readString(view), view.getLong(),
+                view.getInt());
+    }
+
+    /**
+     * 把整个快照逐行交给 sink（仅用于行数较少、需要全部放入内存的目录）
+     */
+    public void readAll(WireCodec.RowSink sink) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        for (int i = 0; i < rowCount; i++) {
+            view.position(buffer.getInt(indexOffset + 4 * i));
+            sink.accept(readString(view), readString(view), readString(view), view.getLong(), view.getInt());
+        }
+    }
+
+    @Override
+    public boolean isSnapshot() {
+        return true;
+    }
+
+    @Override
+    public PagedCatalogModel.Page load(int offset, int limit, String category) {
+        if ("全部".equals(category)) {
+            int end = Math.min(rowCount, offset + limit);
+            Object[][] rows = new Object[Math.max(0, end - offset)][];
+            for (int i = offset; i < end; i++) {
+                rows[i - offset] = readRow(i);
+            }
+            return new PagedCatalogModel.Page(rowCount, rows);
+        }
+        int[] matches = rowsOfCategory(category);
+        int end = Math.min(matches.length, offset + limit);
+        Object[][] rows = new Object[Math.max(0, end - offset)][];
+        for (int i = offset; i < end; i++) {
+            rows[i - offset] = readRow(matches[i]);
+        }
+        return new PagedCatalogModel.Page(matches.length, rows);
+    }
+
+    /**
+     * 删除目录中除本快照以外的旧快照（文件仍被映射时可能删除失败，下次再试）
+     */
+    public void deleteOthers() {
+        File[] files = file.getParentFile().listFiles(
+                (dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (!f.equals(file)) {
+                f.delete();
+            }
+        }
+    }
+
+    // 扫描一次快照，得到某类别的全部行号
+    private synchronized int[] rowsOfCategory(String category) {
+        int[] rows = categoryRows.get(category);
+        if (rows != null) {
+            return rows;
+        }
+        byte[] target = category.getBytes(StandardCharsets.UTF_8);
+        int[] matches = new int[16];
+        int count = 0;
+        for (int i = 0; i < rowCount; i++) {
+            int p = buffer.getInt(indexOffset + 4 * i);
+            // 跳过 id 与名称两个字段
+            p += 2 + (buffer.getShort(p) & 0xFFFF);
+            p += 2 + (buffer.getShort(p) & 0xFFFF);
+            if (fieldEquals(p, target)) {
+                if (count == matches.length) {
+                    int[] grown = new int[count * 2];
+                    System.arraycopy(matches, 0, grown, 0, count);
+                    matches = grown;
+                }
+                matches[count++] = i;
+            }
+        }
+        rows = new int[count];
+        System.arraycopy(matches, 0, rows, 0, count);
+        categoryRows.put(category, rows);
+        return rows;
+    }
+
+    private boolean fieldEquals(int p, byte[] target) {
+        int length = buffer.getShort(p) & 0xFFFF;
+        if (length != target.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(p + 2 + i) != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer view) {
+        int length = view.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 快照写入器：逐行追加，适合边下载边写入，不需要把整个目录放在堆内存中
+     */
+    public static class Writer implements Closeable {
+        private final File directory;
+        private final File temp;
+        private final RandomAccessFile raf;
+        private final DataOutputStream out;
+        private int[] offsets = new int[1024];
+        private int count;
+        private long position = HEADER_SIZE;
+        private boolean finished;
+
+        /**
+         * @param directory 快照目录
+         */
+        public Writer(File directory) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("无法创建快照目录: " + directory);
+            }
+            this.directory = directory;
+            this.temp = File.createTempFile(FILE_PREFIX, ".tmp", directory);
+            this.raf = new RandomAccessFile(temp, "rw");
+            raf.seek(HEADER_SIZE);
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(raf.getFD()), 65536));
+        }
+
+        /**
+         * 追加一行
+         *
+         * @param priceFen 单价（分）
+         * @param stock    库存，小于 0 表示未知
+         */
+        public void add(String id, String name, String category, long priceFen, int stock) throws IOException {
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("快照文件过大");
+            }
+            if (count == offsets.length) {
+                int[] grown = new int[count * 2];
+                System.arraycopy(offsets, 0, grown, 0, count);
+                offsets = grown;
+            }
+            offsets[count++] = (int) position;
+            writeString(id);
+            writeString(name);
+            writeString(category);
+            out.writeLong(priceFen);
+            out.writeInt(stock < 0 ? -1 : stock);
+            position += 8 + 4;
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(bytes.length, 0xFFFF);
+            out.writeShort(length);
+            out.write(bytes, 0, length);
+            position += 2 + length;
+        }
+
+        /**
+         * 写入偏移表与头部，刷到磁盘后改名为正式快照并打开
+         *
+         * @param version 目录版本（下载结束后才知道，因此在这里传入）
+         * @return 新快照
+         */
+        public CatalogSnapshot finish(long version) throws IOException {
+            for (int i = 0; i < count; i++) {
+                out.writeInt(offsets[i]);
+            }
+            out.flush();
+            raf.seek(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt(FORMAT_VERSION);
+            raf.writeLong(version);
+            raf.writeInt(count);
+            raf.writeLong(position);
+            raf.getFD().sync();
+            raf.close();
+            finished = true;
+            // 写到新的文件名，不替换可能仍被映射的旧快照
+            long generation = nextGeneration(directory);
+            File target;
+            while ((target = new File(directory, FILE_PREFIX + version + "." + generation + FILE_SUFFIX)).exists()) {
+                generation++;
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            return open(target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                raf.close();
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * 把内存中的目录写成新快照
+     *
+     * @param directory 快照目录
+     * @param version   目录版本
+     * @param rows      商品行（由 `CatalogTableModel.row` 创建）
+     * @return 新快照
+     */
+    public static CatalogSnapshot write(File directory, long version, Object[][] rows) throws IOException {
+        try (Writer writer = new Writer(directory)) {
+            for (Object[] row : rows) {
+                writer.add((String) row[0], (String) row[1], (String) row[2], (Long) row[3], (Integer) row[4]);
+            }
+            return writer.finish(version);
+        }
+    }
+}
@@ -0,0 +1,600 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * CatalogTableModel - 按列存储的药品目录表格模型（商品全部在内存中时使用）
+ *
+ * 设计说明：
+ * - 每个字段一列数组：id 与名称各一个 `String[]`，价格以"分"为单位存为 `long[]`，库存存为 `int[]`，
+ *   类别编码为字典下标存为 `int[]`（相同类别只保存一个字符串），不再为每行分配 `Object[]`。
+ * - 写入模型的行中价格（分）与库存已是数值（见 `row`，由 JSON 解析或二进制解码时得到），
+ *   模型和购物车操作直接读取数值，不解析字符串；只在显示时格式化。
+ * - 加载时为每个类别建立一个行号位图（另有一个"有货"位图），增量同步时随之更新；
+ *   切换类别只需遍历该类别的位图，再叠加价格区间与仅显示有货等条件，生成新的可见行下标数组后
+ *   一次性替换，只触发一次表格事件。
+ * - 类别列表与各类别的商品数（分面计数）直接取自数据，计数考虑价格与库存条件，按需计算并缓存。
+ * - 搜索由 `SearchIndex` 在后台完成，结果以 id 集合交给本模型，作为又一个过滤条件叠加。
+ * - `getValueAt` 在表格滚动时被频繁调用，不分配对象：价格文本在首次显示时生成并缓存（价格变化时作废），
+ *   常见的库存数字使用预先生成的字符串。
+ *
+ * 列与 `PagedCatalogModel` 一致：ID、药品名称、类别、价格、库存、操作。
+ */
+public class CatalogTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    // 库存未知（服务器未提供或格式错误）时的取值，视为不限库存
+    private static final int UNKNOWN_STOCK = -1;
+    // 类别过滤为"全部"时的类别编码
+    private static final int ALL_CATEGORIES = -1;
+    // 预先生成的库存文本（0..STOCK_TEXTS.length-1）
+    private static final String[] STOCK_TEXTS = new String[10000];
+
+    static {
+        for (int i = 0; i < STOCK_TEXTS.length; i++) {
+            STOCK_TEXTS[i] = String.valueOf(i);
+        }
+    }
+
+    private final String[] columnNames;
+
+    // 各列数据，下标 0..size-1 有效
+    private String[] ids = new String[0];
+    private String[] names = new String[0];
+    private long[] prices = new long[0];
+    private int[] stocks = new int[0];
+    private int[] categories = new int[0];
+    // 价格显示文本缓存，为 null 表示尚未生成
+    private String[] priceTexts = new String[0];
+    private int size;
+
+    // 类别字典：编码 -> 名称，名称 -> 编码
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<String, Integer> categoryCodes = new HashMap<>();
+    // 类别编码 -> 属于该类别的行号位图
+    private final List<BitSet> categoryBits = new ArrayList<>();
+    // 有货（库存大于 0 或未知）的行号位图
+    private final BitSet inStockBits = new BitSet();
+    // 商品 id -> 行下标
+    private final Map<String, Integer> idIndex = new HashMap<>();
+
+    // 当前可见的行下标（按存储顺序）
+    private int[] view = new int[0];
+    private int viewSize;
+    // 过滤条件
+    private int categoryFilter = ALL_CATEGORIES;
+    private long minPrice = 0;
+    private long maxPrice = Long.MAX_VALUE;
+    private boolean inStockOnly;
+    // 搜索结果中的商品 id 及对应的行号位图（为 null 表示没有搜索条件）
+    private Set<String> searchIds;
+    private BitSet searchBits;
+    // 目录数据的版本，每次数据变化（不含过滤条件变化）时递增
+    private long dataVersion;
+    // 各类别满足价格/库存/搜索条件的商品数，以及合计（为 null 表示需要重新计算）
+    private int[] facetCounts;
+    private int facetTotal;
+
+    /**
+     * @param columnNames 列名
+     */
+    public CatalogTableModel(String[] columnNames) {
+        this.columnNames = columnNames;
+    }
+
+    /**
+     * 创建一行目录数据（本模型、`apply` 与快照写入使用的格式）
+     *
+     * @param priceFen 单价（分）
+     * @param stock    库存，小于 0 表示未知
+     * @return { id, name, category, Long 单价, Integer 库存 }
+     */
+    public static Object[] row(String id, String name, String category, long priceFen, int stock) {
+        return new Object[] { id, name, category, priceFen, stock };
+    }
+
+    /**
+     * 解析库存文本：空串或格式错误时返回 -1（未知），负数按 0 处理
+     */
+    public static int parseStock(String stock) {
+        try {
+            return Math.max(0, Integer.parseInt(stock.trim()));
+        } catch (NumberFormatException e) {
+            return UNKNOWN_STOCK;
+        }
+    }
+
+    /**
+     * 整体替换目录数据
+     *
+     * @param rows 每行由 `row` 创建
+     */
+    public void setRows(Object[][] rows) {
+        size = 0;
+        idIndex.clear();
+        for (BitSet bits : categoryBits) {
+            bits.clear();
+        }
+        inStockBits.clear();
+        ensureCapacity(rows.length);
+        for (Object[] row : rows) {
+            upsert(row);
+        }
+        dataVersion++;
+        rebuildSearchBits();
+        rebuildView();
+        fireTableDataChanged();
+    }
+
+    /**
+     * 应用一次增量变化：更新或新增 upserts 中的商品，删除 deletes 中的商品。
+     * 只影响可见行取值时逐行刷新，新增行只追加在末尾，其余情况整体刷新一次。
+     *
+     * @param upserts 新增或更新的商品行（由 `row` 创建）
+     * @param deletes 删除的商品 id
+     * @return 目录是否有变化
+     */
+    public boolean apply(List<Object[]> upserts, List<String> deletes) {
+        int oldViewSize = viewSize;
+        boolean reordered = false;
+        int[] updatedRows = new int[upserts.size()];
+        int updatedCount = 0;
+        for (Object[] row : upserts) {
+            Integer existing = idIndex.get(String.valueOf(row[0]));
+            boolean wasVisible = existing != null && isVisible(existing);
+            int index = upsert(row);
+            if (existing == null) {
+                continue;
+            }
+            if (wasVisible != isVisible(index)) {
+                // 类别、价格或库存变化导致移入或移出当前视图
+                reordered = true;
+            } else if (wasVisible) {
+                updatedRows[updatedCount++] = Arrays.binarySearch(view, 0, viewSize, index);
+            }
+        }
+
+        Set<String> deleted = new HashSet<>();
+        for (String id : deletes) {
+            Integer index = idIndex.get(id);
+            if (index != null && deleted.add(id)) {
+                reordered |= isVisible(index);
+            }
+        }
+        if (!deleted.isEmpty()) {
+            removeAll(deleted);
+        }
+        boolean changed = !upserts.isEmpty() || !deleted.isEmpty();
+        if (changed) {
+            dataVersion++;
+        }
+
+        rebuildView();
+        if (reordered) {
+            fireTableDataChanged();
+        } else {
+            for (int i = 0; i < updatedCount; i++) {
+                fireTableRowsUpdated(updatedRows[i], updatedRows[i]);
+            }
+            if (viewSize > oldViewSize) {
+                fireTableRowsInserted(oldViewSize, viewSize - 1);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 更新单个商品的价格与库存（服务器推送的变化）：只刷新该行，
+     * 变化导致该商品移入或移出当前视图（如"仅显示有货"）时整体刷新一次
+     *
+     * @param id       商品 id
+     * @param priceFen 新单价（分），小于 0 表示不变
+     * @param stock    新库存，小于 0 表示不变
+     * @return 是否有变化（商品不存在时返回 false）
+     */
+    public boolean updatePriceAndStock(String id, long priceFen, int stock) {
+        Integer existing = idIndex.get(id);
+        if (existing == null) {
+            return false;
+        }
+        int index = existing;
+        boolean wasVisible = isVisible(index);
+        boolean changed = false;
+        if (priceFen >= 0 && prices[index] != priceFen) {
+            prices[index] = priceFen;
+            priceTexts[index] = null;
+            changed = true;
+        }
+        if (stock >= 0 && stocks[index] != stock) {
+            stocks[index] = stock;
+            inStockBits.set(index, stock != 0);
+            changed = true;
+        }
+        if (!changed) {
+            return false;
+        }
+        // 各类别的数量同时取决于价格区间与库存条件
+        facetCounts = null;
+        if (wasVisible != isVisible(index)) {
+            rebuildView();
+            fireTableDataChanged();
+        } else if (wasVisible) {
+            int row = Arrays.binarySearch(view, 0, viewSize, index);
+            fireTableRowsUpdated(row, row);
+        }
+        return true;
+    }
+
+    /**
+     * 设置搜索结果（只显示其中的商品，可与类别等条件叠加），整体刷新一次
+     *
+     * @param ids 匹配的商品 id，为 null 表示取消搜索
+     */
+    public void setSearchResult(Collection<String> ids) {
+        if (ids == null && searchIds == null) {
+            return;
+        }
+        searchIds = ids != null ? new HashSet<>(ids) : null;
+        rebuildSearchBits();
+        facetCounts = null;
+        rebuildView();
+        fireTableDataChanged();
+    }
+
+    /** 获取目录数据的版本（用于判断搜索索引与类别列表是否需要重建） */
+    public long getDataVersion() { return dataVersion; }
+
+    /** 各类别的商品数是否需要重新计算（条件或数据变化后，下次读取前） */
+    public boolean isFacetCountsStale() { return facetCounts == null; }
+
+    /** 复制全部商品 id（用于在后台建立搜索索引） */
+    public String[] copyIds() { return Arrays.copyOf(ids, size); }
+
+    /** 复制全部商品名称，与 `copyIds` 一一对应 */
+    public String[] copyNames() { return Arrays.copyOf(names, size); }
+
+    /**
+     * 切换类别过滤，保留价格与库存条件
+     *
+     * @param category 类别名称，"全部" 表示不过滤
+     */
+    public void setCategory(String category) {
+        setFilter(category, minPrice, maxPrice, inStockOnly);
+    }
+
+    /**
+     * 设置组合过滤条件（只重建可见行下标，整体刷新一次）
+     *
+     * @param category    类别名称，"全部" 表示不过滤
+     * @param minPriceFen 最低价格（分，含）
+     * @param maxPriceFen 最高价格（分，含），`Long.MAX_VALUE` 表示不限
+     * @param inStockOnly 是否只显示有货商品
+     */
+    public void setFilter(String category, long minPriceFen, long maxPriceFen, boolean inStockOnly) {
+        // 目录中还没有该类别时记一个新编码，之后同步到的商品自然归入
+        int code = "全部".equals(category) ? ALL_CATEGORIES : categoryCode(category);
+        if (code == categoryFilter && minPriceFen == minPrice && maxPriceFen == maxPrice
+                && inStockOnly == this.inStockOnly) {
+            // 条件没有变化（如价格输入框失焦但内容未改）
+            return;
+        }
+        categoryFilter = code;
+        this.minPrice = minPriceFen;
+        this.maxPrice = maxPriceFen;
+        this.inStockOnly = inStockOnly;
+        facetCounts = null;
+        rebuildView();
+        fireTableDataChanged();
+    }
+
+    /**
+     * 获取目录中现有的类别（按首次出现的顺序）
+     */
+    public List<String> getCategories() {
+        List<String> result = new ArrayList<>();
+        for (int code = 0; code < categoryNames.size(); code++) {
+            if (!categoryBits.get(code).isEmpty()) {
+                result.add(categoryNames.get(code));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取某类别中满足当前价格、库存与搜索条件的商品数
+     *
+     * @param category 类别名称，"全部" 表示所有类别合计
+     */
+    public int getFacetCount(String category) {
+        if (facetCounts == null) {
+            computeFacets();
+        }
+        if ("全部".equals(category)) {
+            return facetTotal;
+        }
+        Integer code = categoryCodes.get(category);
+        return code != null ? facetCounts[code] : 0;
+    }
+
+    /**
+     * 查找商品所在的行下标（不受类别过滤影响）
+     *
+     * @param id 商品 id
+     * @return 行下标，不存在时返回 -1
+     */
+    public int indexOf(String id) {
+        Integer index = idIndex.get(id);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * 查找商品在表格中的行号
+     *
+     * @param id 商品 id
+     * @return 行号，不存在或被过滤掉时返回 -1
+     */
+    public int rowOf(String id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return -1;
+        }
+        int row = Arrays.binarySearch(view, 0, viewSize, index);
+        return row >= 0 ? row : -1;
+    }
+
+    /** 获取目录中的商品总数（不受类别过滤影响） */
+    public int size() { return size; }
+
+    /** 把表格中的行号转换为行下标 */
+    public int toIndex(int row) { return view[row]; }
+
+    /** 获取商品 id */
+    public String getId(int index) { return ids[index]; }
+
+    /** 获取商品名称 */
+    public String getName(int index) { return names[index]; }
+
+    /** 获取商品类别 */
+    public String getCategory(int index) { return categoryNames.get(categories[index]); }
+
+    /** 获取商品单价（单位：分） */
+    public long getPriceFen(int index) { return prices[index]; }
+
+    /** 获取商品库存，库存未知时返回 `Integer.MAX_VALUE`（不限制购买数量） */
+    public int getStock(int index) {
+        return stocks[index] == UNKNOWN_STOCK ? Integer.MAX_VALUE : stocks[index];
+    }
+
+    /**
+     * 导出全部商品（用于写入本地快照）
+     *
+     * @return 每行由 `row` 创建
+     */
+    public Object[][] toRows() {
+        Object[][] rows = new Object[size][];
+        for (int i = 0; i < size; i++) {
+            rows[i] = row(ids[i], names[i], getCategory(i), prices[i], stocks[i]);
+        }
+        return rows;
+    }
+
+    @Override
+    public int getRowCount() {
+        return viewSize;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        // 只有"操作"列可编辑（为了让控件响应点击/输入）
+        return column == 5;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int index = view[row];
+        switch (column) {
+            case 0:
+                return ids[index];
+            case 1:
+                return names[index];
+            case 2:
+                return categoryNames.get(categories[index]);
+            case 3:
+                String price = priceTexts[index];
+                if (price == null) {
+                    price = Money.format(prices[index]);
+                    priceTexts[index] = price;
+                }
+                return price;
+            case 4:
+                return stockText(stocks[index]);
+            default:
+                return "操作";
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        // "操作"列的值仅用于触发编辑器，不需要保存
+    }
+
+    // 写入一行（已存在则覆盖，否则追加），返回行下标
+    private int upsert(Object[] row) {
+        String id = String.valueOf(row[0]);
+        Integer existing = idIndex.get(id);
+        int index;
+        if (existing != null) {
+            index = existing;
+        } else {
+            ensureCapacity(size + 1);
+            index = size++;
+            ids[index] = id;
+            idIndex.put(id, index);
+        }
+        names[index] = String.valueOf(row[1]);
+        int category = categoryCode(String.valueOf(row[2]));
+        if (existing != null) {
+            categoryBits.get(categories[index]).clear(index);
+        }
+        categories[index] = category;
+        categoryBits.get(category).set(index);
+        prices[index] = (Long) row[3];
+        priceTexts[index] = null;
+        int stock = (Integer) row[4];
+        stocks[index] = stock < 0 ? UNKNOWN_STOCK : stock;
+        inStockBits.set(index, stocks[index] != 0);
+        facetCounts = null;
+        return index;
+    }
+
+    // 删除一批商品：按原顺序压缩各列，并重建 id 索引
+    private void removeAll(Set<String> deleted) {
+        int target = 0;
+        for (int i = 0; i < size; i++) {
+            if (deleted.contains(ids[i])) {
+                continue;
+            }
+            ids[target] = ids[i];
+            names[target] = names[i];
+            prices[target] = prices[i];
+            priceTexts[target] = priceTexts[i];
+            stocks[target] = stocks[i];
+            categories[target] = categories[i];
+            target++;
+        }
+        Arrays.fill(ids, target, size, null);
+        Arrays.fill(names, target, size, null);
+        Arrays.fill(priceTexts, target, size, null);
+        size = target;
+        // 行下标已经移动，重建 id 索引与位图
+        idIndex.clear();
+        for (BitSet bits : categoryBits) {
+            bits.clear();
+        }
+        inStockBits.clear();
+        for (int i = 0; i < size; i++) {
+            idIndex.put(ids[i], i);
+            categoryBits.get(categories[i]).set(i);
+            inStockBits.set(i, stocks[i] != 0);
+        }
+        rebuildSearchBits();
+        facetCounts = null;
+    }
+
+    private void rebuildSearchBits() {
+        if (searchIds == null) {
+            searchBits = null;
+            return;
+        }
+        searchBits = new BitSet(size);
+        for (String id : searchIds) {
+            Integer index = idIndex.get(id);
+            if (index != null) {
+                searchBits.set(index);
+            }
+        }
+    }
+
+    // 按当前条件生成新的可见行下标数组并整体替换：选中类别或搜索时只遍历对应的位图
+    private void rebuildView() {
+        int[] next = new int[size];
+        int count = 0;
+        if (categoryFilter == ALL_CATEGORIES && searchBits == null) {
+            for (int i = 0; i < size; i++) {
+                if (matchesPriceAndStock(i)) {
+                    next[count++] = i;
+                }
+            }
+        } else {
+            BitSet bits = categoryFilter == ALL_CATEGORIES ? searchBits : categoryBits.get(categoryFilter);
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                if (matchesPriceAndStock(i)) {
+                    next[count++] = i;
+                }
+            }
+        }
+        view = next;
+        viewSize = count;
+    }
+
+    private boolean isVisible(int index) {
+        return (categoryFilter == ALL_CATEGORIES || categories[index] == categoryFilter)
+                && matchesPriceAndStock(index);
+    }
+
+    // 价格、库存与搜索条件（类别以外的全部条件）
+    private boolean matchesPriceAndStock(int index) {
+        return prices[index] >= minPrice && prices[index] <= maxPrice
+                && (!inStockOnly || inStockBits.get(index))
+                && (searchBits == null || searchBits.get(index));
+    }
+
+    // 统计各类别满足价格/库存/搜索条件的商品数：没有这些条件时直接取位图的基数
+    private void computeFacets() {
+        int[] counts = new int[categoryNames.size()];
+        int total = 0;
+        if (minPrice <= 0 && maxPrice == Long.MAX_VALUE && !inStockOnly && searchBits == null) {
+            for (int code = 0; code < counts.length; code++) {
+                counts[code] = categoryBits.get(code).cardinality();
+            }
+            total = size;
+        } else {
+            for (int i = 0; i < size; i++) {
+                if (matchesPriceAndStock(i)) {
+                    counts[categories[i]]++;
+                    total++;
+                }
+            }
+        }
+        facetCounts = counts;
+        facetTotal = total;
+    }
+
+    private int categoryCode(String category) {
+        Integer code = categoryCodes.get(category);
+        if (code == null) {
+            code = categoryNames.size();
+            categoryNames.add(category);
+            categoryCodes.put(category, code);
+            categoryBits.add(new BitSet());
+        }
+        return code;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int grown = Math.max(capacity, Math.max(16, ids.length * 2));
+        ids = Arrays.copyOf(ids, grown);
+        names = Arrays.copyOf(names, grown);
+        prices = Arrays.copyOf(prices, grown);
+        priceTexts = Arrays.copyOf(priceTexts, grown);
+        stocks = Arrays.copyOf(stocks, grown);
+        categories = Arrays.copyOf(categories, grown);
+    }
+
+    private static String stockText(int stock) {
+        if (stock == UNKNOWN_STOCK) {
+            return "";
+        }
+        return stock < STOCK_TEXTS.length ? STOCK_TEXTS[stock] : String.valueOf(stock);
+    }
+}
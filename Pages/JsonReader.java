@@ -0,0 +1,542 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JsonReader - 流式（拉取式）JSON 解析器
+ *
+ * 设计说明：
+ * - 直接从字节流读取并自行做 UTF-8 解码，不需要先把整个响应拼成字符串。
+ * - 调用方按结构依次调用 `beginArray()`、`beginObject()`、`nextName()`、`nextString()` 等方法，
+ *   逗号与冒号由解析器内部的状态栈处理。
+ * - 字符串值在可复用的字符缓冲区中解码，支持全部转义字符与 `\\uXXXX`（含代理对）。
+ * - `nextNameIndex` 在不创建字符串的情况下匹配字段名；`nextPooledString` 对重复出现的值
+ *   （如药品类别）复用同一个 String 实例，使解析过程产生的垃圾与数据规模无关。
+ * - 数值、布尔值也可以通过 `nextString()` 以文本形式读取，兼容服务器把价格写成字符串或数字的两种格式。
+ */
+public class JsonReader implements Closeable {
+    // peek() 返回的记号类型
+    static final int BEGIN_ARRAY = 1;
+    static final int END_ARRAY = 2;
+    static final int BEGIN_OBJECT = 3;
+    static final int END_OBJECT = 4;
+    static final int NAME = 5;
+    static final int STRING = 6;
+    static final int NUMBER = 7;
+    static final int BOOLEAN = 8;
+    static final int NULL = 9;
+    static final int END_DOCUMENT = 10;
+
+    // 作用域状态
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final InputStream in;
+    // 原始字节缓冲区
+    private final byte[] bytes = new byte[8192];
+    private int pos;
+    private int limit;
+    // 解码四字节 UTF-8 时暂存的低位代理字符
+    private int pendingLowSurrogate = -1;
+    // 回退的一个字符（-2 表示无）
+    private int peekedChar = -2;
+
+    // 当前字符串/数值的解码缓冲区（可扩容、复用）
+    private char[] text = new char[128];
+    private int textLength;
+
+    // 作用域栈
+    private int[] stack = new int[32];
+    private int stackSize = 1;
+    // 已预读但尚未消费的记号
+    private int peeked;
+
+    // 字符串池（开放寻址），用于复用重复出现的值
+    private String[] pool = new String[256];
+    private int poolSize;
+
+    public JsonReader(InputStream in) {
+        this.in = in;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * 查看下一个记号的类型但不消费它
+     *
+     * @return 记号类型常量
+     */
+    public int peek() throws IOException {
+        if (peeked == 0) {
+            peeked = doPeek();
+        }
+        return peeked;
+    }
+
+    /** 当前数组或对象中是否还有元素 */
+    public boolean hasNext() throws IOException {
+        int p = peek();
+        return p != END_ARRAY && p != END_OBJECT && p != END_DOCUMENT;
+    }
+
+    public void beginArray() throws IOException {
+        expect(BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(END_ARRAY);
+        stackSize--;
+    }
+
+    public void beginObject() throws IOException {
+        expect(BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(END_OBJECT);
+        stackSize--;
+    }
+
+    /**
+     * 读取字段名
+     *
+     * @return 字段名
+     */
+    public String nextName() throws IOException {
+        expect(NAME);
+        readString();
+        return new String(text, 0, textLength);
+    }
+
+    /**
+     * 读取字段名并在候选列表中查找，不创建字符串
+     *
+     * @param names 候选字段名
+     * @return 匹配的下标，未匹配返回 -1
+     */
+    public int nextNameIndex(String[] names) throws IOException {
+        expect(NAME);
+        readString();
+        for (int i = 0; i < names.length; i++) {
+            if (textEquals(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 读取字符串值；数值、布尔值以文本形式返回，null 返回空字符串
+     *
+     * @return 值的文本
+     */
+    public String nextString() throws IOException {
+        if (!readScalar()) {
+            return "";
+        }
+        return new String(text, 0, textLength);
+    }
+
+    /**
+     * 读取字符串值，相同内容复用池中的同一实例
+     *
+     * @return 值的文本
+     */
+    public String nextPooledString() throws IOException {
+        if (!readScalar()) {
+            return "";
+        }
+        int hash = 0;
+        for (int i = 0; i < textLength; i++) {
+            hash = 31 * hash + text[i];
+        }
+        int mask = pool.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (pool[slot] != null) {
+            if (textEquals(pool[slot])) {
+                return pool[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String value = new String(text, 0, textLength);
+        pool[slot] = value;
+        if (++poolSize * 2 > pool.length) {
+            rehashPool();
+        }
+        return value;
+    }
+
+    /**
+     * 读取整数值（也接受加引号的数字）
+     *
+     * @param defaultValue 值为空或无法解析时返回的默认值
+     * @return 整数值
+     */
+    public long nextLong(long defaultValue) throws IOException {
+        if (!readScalar() || textLength == 0) {
+            return defaultValue;
+        }
+        long value = 0;
+        int i = 0;
+        boolean negative = text[0] == '-';
+        if (negative || text[0] == '+') {
+            i++;
+        }
+        if (i == textLength) {
+            return defaultValue;
+        }
+        for (; i < textLength; i++) {
+            char c = text[i];
+            if (c < '0' || c > '9') {
+                return defaultValue;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /** 读取布尔值 */
+    public boolean nextBoolean() throws IOException {
+        if (!readScalar()) {
+            return false;
+        }
+        return textEquals("true");
+    }
+
+    /** 跳过下一个值（包括嵌套的数组和对象） */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int p = peek();
+            switch (p) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case NAME:
+                    expect(NAME);
+                    readString();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("意外的文档结尾");
+                default:
+                    readScalar();
+                    break;
+            }
+        } while (depth != 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // 消费一个标量值到 text 缓冲区；值为 null 时返回 false
+    private boolean readScalar() throws IOException {
+        int p = peek();
+        peeked = 0;
+        switch (p) {
+            case STRING:
+                readString();
+                return true;
+            case NUMBER:
+            case BOOLEAN:
+                readLiteral();
+                return true;
+            case NULL:
+                readLiteral();
+                textLength = 0;
+                return false;
+            default:
+                throw syntaxError("期望值，实际为记号 " + p);
+        }
+    }
+
+    private void expect(int token) throws IOException {
+        int p = peek();
+        if (p != token) {
+            throw syntaxError("期望记号 " + token + "，实际为 " + p);
+        }
+        peeked = 0;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] grown = new int[stackSize * 2];
+            System.arraycopy(stack, 0, grown, 0, stackSize);
+            stack = grown;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    // 根据当前作用域读取分隔符，并判断下一个记号类型
+    private int doPeek() throws IOException {
+        int scope = stack[stackSize - 1];
+        int c;
+        if (scope == EMPTY_ARRAY || scope == NONEMPTY_ARRAY) {
+            c = nextNonWhitespace();
+            if (c == ']') {
+                return END_ARRAY;
+            }
+            if (scope == NONEMPTY_ARRAY) {
+                if (c != ',') {
+                    throw syntaxError("数组元素之间缺少逗号");
+                }
+                c = nextNonWhitespace();
+            }
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            c = nextNonWhitespace();
+            if (c == '}') {
+                return END_OBJECT;
+            }
+            if (scope == NONEMPTY_OBJECT) {
+                if (c != ',') {
+                    throw syntaxError("字段之间缺少逗号");
+                }
+                c = nextNonWhitespace();
+            }
+            if (c != '"') {
+                throw syntaxError("字段名必须是字符串");
+            }
+            stack[stackSize - 1] = DANGLING_NAME;
+            return NAME;
+        } else if (scope == DANGLING_NAME) {
+            c = nextNonWhitespace();
+            if (c != ':') {
+                throw syntaxError("字段名之后缺少冒号");
+            }
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            c = nextNonWhitespace();
+        } else {
+            c = nextNonWhitespace();
+            if (c == -1) {
+                return END_DOCUMENT;
+            }
+            if (scope == NONEMPTY_DOCUMENT) {
+                throw syntaxError("文档只能包含一个顶层值");
+            }
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        }
+
+        switch (c) {
+            case '[':
+                return BEGIN_ARRAY;
+            case '{':
+                return BEGIN_OBJECT;
+            case '"':
+                return STRING;
+            case 't':
+            case 'f':
+                unread(c);
+                return BOOLEAN;
+            case 'n':
+                unread(c);
+                return NULL;
+            case -1:
+                throw syntaxError("意外的文档结尾");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    unread(c);
+                    return NUMBER;
+                }
+                throw syntaxError("无法识别的字符 '" + (char) c + "'");
+        }
+    }
+
+    // 读取引号内的字符串（起始引号已被 doPeek 消费）
+    private void readString() throws IOException {
+        textLength = 0;
+        while (true) {
+            int c = readChar();
+            if (c == '"') {
+                return;
+            }
+            if (c == -1) {
+                throw syntaxError("字符串未结束");
+            }
+            if (c == '\\') {
+                c = readEscape();
+            }
+            appendText((char) c);
+        }
+    }
+
+    private int readEscape() throws IOException {
+        int c = readChar();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = readChar();
+                    int digit = Character.digit(h, 16);
+                    if (h == -1 || digit < 0) {
+                        throw syntaxError("非法的 \\u 转义");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return value;
+            default:
+                throw syntaxError("非法的转义字符");
+        }
+    }
+
+    // 读取未加引号的字面量（数字、true、false、null）
+    private void readLiteral() throws IOException {
+        textLength = 0;
+        while (true) {
+            int c = readChar();
+            if (c == -1) {
+                return;
+            }
+            if (c == ',' || c == ']' || c == '}' || c == ':' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                unread(c);
+                return;
+            }
+            appendText((char) c);
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = readChar();
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return c;
+            }
+        }
+    }
+
+    private void unread(int c) {
+        peekedChar = c;
+    }
+
+    // 从字节流解码出下一个 UTF-16 字符，-1 表示流结束
+    private int readChar() throws IOException {
+        if (peekedChar != -2) {
+            int c = peekedChar;
+            peekedChar = -2;
+            return c;
+        }
+        if (pendingLowSurrogate >= 0) {
+            int c = pendingLowSurrogate;
+            pendingLowSurrogate = -1;
+            return c;
+        }
+        int b = readByte();
+        if (b < 0x80) {
+            return b;
+        }
+        int codePoint;
+        int extra;
+        if ((b & 0xE0) == 0xC0) {
+            codePoint = b & 0x1F;
+            extra = 1;
+        } else if ((b & 0xF0) == 0xE0) {
+            codePoint = b & 0x0F;
+            extra = 2;
+        } else if ((b & 0xF8) == 0xF0) {
+            codePoint = b & 0x07;
+            extra = 3;
+        } else {
+            throw syntaxError("非法的 UTF-8 字节");
+        }
+        for (int i = 0; i < extra; i++) {
+            int next = readByte();
+            if (next == -1 || (next & 0xC0) != 0x80) {
+                throw syntaxError("不完整的 UTF-8 序列");
+            }
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        if (codePoint >= 0x10000) {
+            pendingLowSurrogate = Character.lowSurrogate(codePoint);
+            return Character.highSurrogate(codePoint);
+        }
+        return codePoint;
+    }
+
+    private int readByte() throws IOException {
+        if (pos == limit) {
+            limit = in.read(bytes, 0, bytes.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return bytes[pos++] & 0xFF;
+    }
+
+    private void appendText(char c) {
+        if (textLength == text.length) {
+            char[] grown = new char[textLength * 2];
+            System.arraycopy(text, 0, grown, 0, textLength);
+            text = grown;
+        }
+        text[textLength++] = c;
+    }
+
+    private boolean textEquals(String s) {
+        if (s.length() != textLength) {
+            return false;
+        }
+        for (int i = 0; i < textLength; i++) {
+            if (s.charAt(i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehashPool() {
+        String[] old = pool;
+        pool = new String[old.length * 2];
+        int mask = pool.length - 1;
+        for (String s : old) {
+            if (s == null) {
+                continue;
+            }
+            int hash = s.hashCode();
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (pool[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            pool[slot] = s;
+        }
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("JSON 格式错误: " + message);
+    }
+}
@@ -1,13 +1,18 @@
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.prefs.Preferences;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableCellEditor;
 
 public class LoginFrame extends JFrame {
     private static final long serialVersionUID = 1L;
@@ -30,6 +35,29 @@ public class LoginFrame extends JFrame {
 
     private char defaultEchoChar;
 
+    // 正在进行的登录请求（为 null 表示空闲）
+    private CompletableFuture<Boolean> pendingLogin;
+
+    // "我的订单"的时间范围选项及对应的天数（0 表示不限）
+    private static final String[] ORDER_RANGE_NAMES = { "全部", "最近一个月", "最近三个月", "最近一年" };
+    private static final int[] ORDER_RANGE_DAYS = { 0, 30, 90, 365 };
+    // 滚动到距底部不足多少行时加载更早的订单
+    private static final int ORDER_PREFETCH_ROWS = 10;
+
+    // "我的订单"界面：第一次打开时创建，之后复用，每次打开重新查询最新一页
+    private final OrderHistoryTableModel orderHistoryModel = new OrderHistoryTableModel();
+    private JPanel orderHistoryPanel;
+    private JLabel noOrderLabel;
+    private JLabel orderStatusLabel;
+    private JComboBox<String> orderRangeBox;
+    private JTable orderTable;
+    private JScrollPane orderScrollPane;
+    // 当前登录的用户
+    private String currentUsername;
+    // 当前的订单查询（为 null 表示服务器不支持分页查询，改为一次取回全部订单）与在途的翻页（或取回全部）请求
+    private OrderQuery orderQuery;
+    private CompletableFuture<List<OrderHistory.Order>> orderPageTask;
+
     public LoginFrame() {
         configureFrame();
         setContentPane(createRootPanel());
@@ -269,6 +297,12 @@ public class LoginFrame extends JFrame {
     }
 
     private void handleLogin(ActionEvent event) {
+        if (pendingLogin != null) {
+            // 登录进行中再次点击：取消本次登录
+            pendingLogin.cancel(true);
+            return;
+        }
+
         String username = usernameField.getText().trim();
         char[] passwordChars = passwordField.getPassword();
 
@@ -284,39 +318,44 @@ public class LoginFrame extends JFrame {
         // 输入密码 -> hash
         String password = new String(passwordChars);
 
-        boolean isValid = false;
-        try {
-            java.net.Socket socket = new java.net.Socket(Constant.SERVER_IP, Constant.SERVER_PORT);
-            DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-            DataInputStream dis = new DataInputStream(socket.getInputStream());
-
-            dos.writeInt(1);
-            dos.writeUTF(username + "\n" + password);
-            dos.flush();
-
-            isValid = dis.readBoolean();
-            socket.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "连接服务器失败", "错误", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        // 修复：变量名 + 使用哈希比对
-        if (!isValid) {
-            statusLabel.setText("账号或密码不正确，请重新输入。");
-            JOptionPane.showMessageDialog(this, "账号或密码错误", "登录失败",
-                    JOptionPane.ERROR_MESSAGE);
+        // 验证请求在后台进行，期间再次点击按钮即可取消
+        statusLabel.setText("正在连接服务器验证账号...");
+        loginButton.setText("取消登录");
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        CompletableFuture<Boolean> login = ServerClient.getInstance().submitBoolean(ServerClient.OP_LOGIN,
+                username + "\n" + password);
+        pendingLogin = login;
+        login.whenCompleteAsync((isValid, error) -> {
+            pendingLogin = null;
+            loginButton.setText("立即登录");
+            setCursor(Cursor.getDefaultCursor());
             Arrays.fill(passwordChars, '\0');
-            return;
-        }
 
-        rememberAccount(username);
-        statusLabel.setText("登录成功，正在为您调度主界面...");
-        Arrays.fill(passwordChars, '\0');
+            if (error != null) {
+                if (ServerClient.isCancellation(error)) {
+                    statusLabel.setText("已取消登录。");
+                    return;
+                }
+                error.printStackTrace();
+                statusLabel.setText("连接服务器失败，请稍后重试。");
+                JOptionPane.showMessageDialog(this, "连接服务器失败", "错误", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-        openMainWindow(username);
-        dispose();
+            // 修复：变量名 + 使用哈希比对
+            if (!isValid) {
+                statusLabel.setText("账号或密码不正确，请重新输入。");
+                JOptionPane.showMessageDialog(this, "账号或密码错误", "登录失败",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            rememberAccount(username);
+            statusLabel.setText("登录成功，正在为您调度主界面...");
+
+            openMainWindow(username);
+            dispose();
+        }, ServerClient.EDT);
     }
 
     private void showRegistrationDialog() {
@@ -382,6 +421,9 @@ public class LoginFrame extends JFrame {
         gbc.gridy = 8;
         contentPanel.add(buttonRow, gbc);
 
+        // 正在进行的注册请求（为 null 表示空闲）
+        AtomicReference<CompletableFuture<Boolean>> pendingRegister = new AtomicReference<>();
+
         submitButton.addActionListener(event -> {
             String rawUsername = newUsernameField.getText().trim();
             char[] passwordChars = newPasswordField.getPassword();
@@ -428,39 +470,46 @@ public class LoginFrame extends JFrame {
                 return;
             }
 
-            boolean isRegistered = false;
-            try {
-                java.net.Socket socket = new java.net.Socket(Constant.SERVER_IP, Constant.SERVER_PORT);
-                DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-                DataInputStream dis = new DataInputStream(socket.getInputStream());
-
-                dos.writeInt(2);
-                dos.writeUTF(rawUsername + "\n" + password);
-                dos.flush();
-
-                isRegistered = dis.readBoolean();
-                socket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(dialog, "连接服务器失败", "错误", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
+            // 注册请求在后台进行，期间禁止重复提交，点击"取消"可放弃
+            submitButton.setEnabled(false);
+            submitButton.setText("正在提交...");
+            CompletableFuture<Boolean> register = ServerClient.getInstance().submitBoolean(
+                    ServerClient.OP_REGISTER, rawUsername + "\n" + password);
+            pendingRegister.set(register);
+            register.whenCompleteAsync((isRegistered, error) -> {
+                pendingRegister.set(null);
+                submitButton.setEnabled(true);
+                submitButton.setText("创建账号");
+                Arrays.fill(passwordChars, '\0');
+                Arrays.fill(confirmChars, '\0');
 
-            if (isRegistered) {
-                statusLabel.setText("账号 " + rawUsername + " 注册成功,请使用新账号登录。");
-                JOptionPane.showMessageDialog(this, "注册成功,立即使用新账号登录吧!", "注册成功",
-                        JOptionPane.INFORMATION_MESSAGE);
-                dialog.dispose();
-            } else {
-                JOptionPane.showMessageDialog(dialog, "注册失败，账号可能已存在", "注册失败",
-                        JOptionPane.ERROR_MESSAGE);
-            }
+                if (error != null) {
+                    if (!ServerClient.isCancellation(error)) {
+                        error.printStackTrace();
+                        JOptionPane.showMessageDialog(dialog, "连接服务器失败", "错误", JOptionPane.ERROR_MESSAGE);
+                    }
+                    return;
+                }
 
-            Arrays.fill(passwordChars, '\0');
-            Arrays.fill(confirmChars, '\0');
+                if (isRegistered) {
+                    statusLabel.setText("账号 " + rawUsername + " 注册成功,请使用新账号登录。");
+                    JOptionPane.showMessageDialog(this, "注册成功,立即使用新账号登录吧!", "注册成功",
+                            JOptionPane.INFORMATION_MESSAGE);
+                    dialog.dispose();
+                } else {
+                    JOptionPane.showMessageDialog(dialog, "注册失败，账号可能已存在", "注册失败",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }, ServerClient.EDT);
         });
 
-        cancelButton.addActionListener(event -> dialog.dispose());
+        cancelButton.addActionListener(event -> {
+            CompletableFuture<Boolean> register = pendingRegister.get();
+            if (register != null) {
+                register.cancel(true);
+            }
+            dialog.dispose();
+        });
 
         dialog.setContentPane(contentPanel);
         dialog.setResizable(false);
@@ -484,6 +533,9 @@ public class LoginFrame extends JFrame {
     }
 
     private void openMainWindow(String username) {
+        currentUsername = username;
+        // 在后台提前从本地订单日志恢复订单历史，并继续上传上次未上传完的订单
+        CompletableFuture.runAsync(OrderOutbox::getInstance);
         JFrame frame = new JFrame("欢迎使用AscentSys应用 - 当前用户: " + username);
         // 修改：使用常量设置大小
         frame.setSize(Constant.STD_WINDOWS_WIDTH, Constant.STD_WINDOWS_HEIGHT);
@@ -507,6 +559,14 @@ public class LoginFrame extends JFrame {
         mainPanel.add(sidebar, BorderLayout.WEST);
         mainPanel.add(contentPanel, BorderLayout.CENTER);
 
+        // 窗口关闭时停止商品列表的后台订阅并移除监听器
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                shop.dispose();
+            }
+        });
+
         frame.getContentPane().add(mainPanel, BorderLayout.CENTER);
         frame.setVisible(true);
     }
@@ -560,7 +620,7 @@ public class LoginFrame extends JFrame {
         orderHistoryButton.addActionListener(e -> {
             // 切换到购买历史界面
             contentPanel.removeAll();
-            contentPanel.add(createOrderHistoryPanel(), BorderLayout.CENTER);
+            contentPanel.add(showOrderHistoryPanel(), BorderLayout.CENTER);
             contentPanel.revalidate();
             contentPanel.repaint();
         });
@@ -569,6 +629,131 @@ public class LoginFrame extends JFrame {
         return sidebar;
     }
 
+    // 显示购买历史界面：复用已创建的表格，重新从最新一页开始加载
+    private JPanel showOrderHistoryPanel() {
+        if (orderHistoryPanel == null) {
+            orderHistoryPanel = createOrderHistoryPanel();
+        }
+        reloadOrderHistory();
+        return orderHistoryPanel;
+    }
+
+    // 按当前的时间范围重新查询：先显示本机尚未上传（或上传失败）的订单，再从服务器加载最新一页
+    private void reloadOrderHistory() {
+        if (orderPageTask != null) {
+            orderPageTask.cancel(false);
+            orderPageTask = null;
+        }
+        long fromTime = orderRangeStart();
+        orderQuery = new OrderQuery(currentUsername, fromTime, 0, null, OrderQuery.DEFAULT_PAGE_SIZE);
+        orderHistoryModel.reset(localOrders(fromTime, true));
+        loadNextOrderPage();
+    }
+
+    // 加载下一页更早的订单并合并到订单历史；第一页失败时（服务器不支持或无法连接）先显示订单历史中的全部订单，
+    // 再尝试用旧请求一次取回全部订单
+    private void loadNextOrderPage() {
+        if (orderQuery == null || orderPageTask != null || !orderQuery.hasMore()) {
+            return;
+        }
+        OrderQuery query = orderQuery;
+        boolean firstPage = query.isFirstPage();
+        CompletableFuture<List<OrderHistory.Order>> task = query.nextPage();
+        orderPageTask = task;
+        orderStatusLabel.setText("正在加载订单...");
+        updateOrderEmptyState();
+        task.whenCompleteAsync((orders, error) -> {
+            if (task != orderPageTask) {
+                // 已取消或被新的查询取代
+                return;
+            }
+            orderPageTask = null;
+            if (error == null) {
+                orderStatusLabel.setText(query.hasMore() ? "" : "已显示全部订单");
+                orderHistoryModel.append(OrderHistory.getInstance().merge(orders));
+                updateOrderEmptyState();
+                // 表格尚未填满视口时继续加载
+                SwingUtilities.invokeLater(this::loadMoreOrdersIfNeeded);
+            } else if (firstPage) {
+                orderQuery = null;
+                orderHistoryModel.reset(localOrders(orderRangeStart(), false));
+                updateOrderEmptyState();
+                loadAllOrders();
+            } else {
+                orderStatusLabel.setText("加载失败，滚动到底部重试");
+            }
+        }, ServerClient.EDT);
+    }
+
+    // 服务器不支持分页查询：一次取回全部订单，合并到订单历史后重新显示
+    private void loadAllOrders() {
+        CompletableFuture<List<OrderHistory.Order>> task = OrderQuery.loadAll(currentUsername);
+        orderPageTask = task;
+        orderStatusLabel.setText("正在加载订单...");
+        updateOrderEmptyState();
+        task.whenCompleteAsync((orders, error) -> {
+            if (task != orderPageTask) {
+                // 已取消或被新的查询取代
+                return;
+            }
+            orderPageTask = null;
+            if (error != null) {
+                updateOrderEmptyState();
+                orderStatusLabel.setText("无法从服务器获取订单，仅显示本机保存的订单");
+                return;
+            }
+            OrderHistory.getInstance().merge(orders);
+            orderHistoryModel.reset(localOrders(orderRangeStart(), false));
+            orderStatusLabel.setText("");
+            updateOrderEmptyState();
+        }, ServerClient.EDT);
+    }
+
+    // 滚动到接近底部时加载更早的订单
+    private void loadMoreOrdersIfNeeded() {
+        JScrollBar bar = orderScrollPane.getVerticalScrollBar();
+        int threshold = orderTable.getRowHeight() * ORDER_PREFETCH_ROWS;
+        if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - threshold) {
+            loadNextOrderPage();
+        }
+    }
+
+    private void updateOrderEmptyState() {
+        boolean empty = orderHistoryModel.getRowCount() == 0 && orderPageTask == null;
+        noOrderLabel.setVisible(empty);
+        orderScrollPane.setVisible(!empty);
+        orderHistoryPanel.revalidate();
+    }
+
+    // 当前时间范围的起始时间（毫秒），0 表示不限
+    private long orderRangeStart() {
+        int days = ORDER_RANGE_DAYS[Math.max(0, orderRangeBox.getSelectedIndex())];
+        return days == 0 ? 0 : System.currentTimeMillis() - days * 24L * 60 * 60 * 1000;
+    }
+
+    // 订单历史中当前用户在时间范围内的订单（从新到旧），pendingOnly 时只取服务器上没有的（待上传与上传失败）
+    private List<OrderHistory.Order> localOrders(long fromTime, boolean pendingOnly) {
+        List<OrderHistory.Order> all = OrderHistory.getInstance().getOrders();
+        List<OrderHistory.Order> result = new ArrayList<>();
+        for (int i = all.size() - 1; i >= 0; i--) {
+            OrderHistory.Order order = all.get(i);
+            if (pendingOnly && !OrderHistory.STATUS_PENDING_UPLOAD.equals(order.getStatus())
+                    && !OrderHistory.STATUS_UPLOAD_FAILED.equals(order.getStatus())) {
+                continue;
+            }
+            if (order.getOrderDate().getTime() < fromTime) {
+                continue;
+            }
+            if (order.getUsername() != null && !order.getUsername().equals(currentUsername)) {
+                continue;
+            }
+            result.add(order);
+        }
+        // 从服务器合并的订单不一定按下单时间排列在订单历史中
+        result.sort((a, b) -> b.getOrderDate().compareTo(a.getOrderDate()));
+        return result;
+    }
+
     // 创建购买历史表格界面
     private JPanel createOrderHistoryPanel() {
         JPanel panel = new JPanel();
@@ -582,99 +767,41 @@ public class LoginFrame extends JFrame {
         titleLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 24, 0));
         panel.add(titleLabel);
 
-        // 获取订单历史数据
-        List<OrderHistory.Order> orders = OrderHistory.getInstance().getOrders();
-
-        // 如果没有订单
-        if (orders.isEmpty()) {
-            JLabel noOrderLabel = new JLabel("暂无购买记录");
-            noOrderLabel.setFont(new Font("Microsoft YaHei", Font.PLAIN, 16));
-            noOrderLabel.setForeground(new Color(107, 114, 128));
-            noOrderLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            panel.add(noOrderLabel);
-            return panel;
-        }
-
-        // 创建表格数据
-        Object[][] tableData = new Object[orders.size()][5];
-        // 创建SimpleDateFormat对象，使用：分隔所有时间单位
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy:MM:dd:HH:mm:ss");
-        for (int i = 0; i < orders.size(); i++) {
-            OrderHistory.Order order = orders.get(i);
-            tableData[i][0] = order.getOrderId();
-            tableData[i][1] = sdf.format(order.getOrderDate());
-            tableData[i][2] = order; // 将Order对象存入表格，用于自定义渲染
-            tableData[i][3] = "¥" + String.format("%.2f", order.getTotalPrice());
-            tableData[i][4] = order.getStatus();
-        }
-
-        // 列名
-        String[] columnNames = { "订单ID", "下单时间", "购买商品", "总价", "状态" };
-
-        // 创建表格模型
-        DefaultTableModel tableModel = new DefaultTableModel(tableData, columnNames) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                // 允许"购买商品"列(索引2)进行编辑，以便触发滚动条交互
-                return column == 2;
-            }
-        };
-
-        // 创建表格
-        JTable table = new JTable(tableModel);
-
-        // 创建自定义的商品列表渲染器
-        javax.swing.table.TableCellRenderer itemListRenderer = new javax.swing.table.DefaultTableCellRenderer() {
-            @Override
-            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
-                    boolean hasFocus, int row, int column) {
-                // 如果value是Order对象，生成商品列表
-                if (value instanceof OrderHistory.Order) {
-                    OrderHistory.Order order = (OrderHistory.Order) value;
-                    // 创建文本区域显示商品列表
-                    JTextArea textArea = new JTextArea();
-                    textArea.setFont(new Font("Microsoft YaHei", Font.PLAIN, 12));
-                    textArea.setEditable(false);
-                    textArea.setLineWrap(true);
-                    textArea.setWrapStyleWord(true);
-
-                    // 生成商品列表文本
-                    StringBuilder sb = new StringBuilder();
-                    for (OrderHistory.OrderItem item : order.getItems()) {
-                        sb.append(item.getName()).append(" - ").append(item.getQuantity()).append("个\n");
-                    }
-                    textArea.setText(sb.toString());
-
-                    // 创建滚动面板
-                    JScrollPane scrollPane = new JScrollPane(textArea);
-                    scrollPane.setPreferredSize(new Dimension(200, 100));
-                    scrollPane.setBorder(BorderFactory.createEmptyBorder());
-                    // 设置滚动条策略，确保需要时显示
-                    scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-                    scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
-                    // 设置滚动面板的背景色
-                    scrollPane.getViewport().setBackground(textArea.getBackground());
-
-                    // 设置选中状态的背景色
-                    if (isSelected) {
-                        textArea.setBackground(new Color(51, 153, 255));
-                        textArea.setForeground(Color.WHITE);
-                        scrollPane.getViewport().setBackground(new Color(51, 153, 255));
-                    } else {
-                        textArea.setBackground(Color.WHITE);
-                        textArea.setForeground(Color.BLACK);
-                        scrollPane.getViewport().setBackground(Color.WHITE);
-                    }
-
-                    return scrollPane;
-                }
-                return super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-            }
-        };
+        // 时间范围与加载状态
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        filterPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        filterPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 40));
+        JLabel rangeLabel = new JLabel("时间范围：");
+        rangeLabel.setFont(new Font("Microsoft YaHei", Font.PLAIN, 14));
+        filterPanel.add(rangeLabel);
+        orderRangeBox = new JComboBox<>(ORDER_RANGE_NAMES);
+        orderRangeBox.setFont(new Font("Microsoft YaHei", Font.PLAIN, 14));
+        orderRangeBox.addActionListener(e -> reloadOrderHistory());
+        filterPanel.add(orderRangeBox);
+        filterPanel.add(Box.createHorizontalStrut(16));
+        orderStatusLabel = new JLabel("");
+        orderStatusLabel.setFont(new Font("Microsoft YaHei", Font.PLAIN, 13));
+        orderStatusLabel.setForeground(new Color(107, 114, 128));
+        filterPanel.add(orderStatusLabel);
+        filterPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 16, 0));
+        panel.add(filterPanel);
+
+        // 没有订单时显示的提示
+        noOrderLabel = new JLabel("暂无购买记录");
+        noOrderLabel.setFont(new Font("Microsoft YaHei", Font.PLAIN, 16));
+        noOrderLabel.setForeground(new Color(107, 114, 128));
+        noOrderLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(noOrderLabel);
+
+        // 创建表格：数据由 OrderHistoryTableModel 按需生成
+        JTable table = new JTable(orderHistoryModel);
+        orderTable = table;
 
         // 美化表格
         table.setFont(new Font("Microsoft YaHei", Font.PLAIN, 14));
-        table.setRowHeight(100); // 增加行高以容纳滚动面板
+        // 行高固定为显示 OrderHistoryTableModel.VISIBLE_ITEM_LINES 行商品的高度，更多商品可点击单元格滚动查看
+        table.setRowHeight(table.getFontMetrics(ItemListRenderer.ITEM_FONT).getHeight()
+                * OrderHistoryTableModel.VISIBLE_ITEM_LINES + 8);
         javax.swing.table.DefaultTableCellRenderer headerRenderer = new javax.swing.table.DefaultTableCellRenderer();
         headerRenderer.setBackground(new Color(0, 82, 217));
         headerRenderer.setForeground(Color.WHITE);
@@ -687,60 +814,107 @@ public class LoginFrame extends JFrame {
         table.setShowHorizontalLines(true);
         table.setFillsViewportHeight(true);
 
-        // 定义编辑器，支持滚动交互
-        class ItemListCellEditor extends AbstractCellEditor implements javax.swing.table.TableCellEditor {
-            private JTextArea textArea;
-            private JScrollPane scrollPane;
-            private OrderHistory.Order currentOrder;
-
-            public ItemListCellEditor() {
-                textArea = new JTextArea();
-                textArea.setFont(new Font("Microsoft YaHei", Font.PLAIN, 12));
-                textArea.setEditable(false);
-                textArea.setLineWrap(true);
-                textArea.setWrapStyleWord(true);
-                
-                scrollPane = new JScrollPane(textArea);
-                scrollPane.setBorder(BorderFactory.createEmptyBorder());
-                scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-                scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
-            }
+        // 订单上传成功后状态由"待上传"变为"已完成"，重绘表格
+        OrderOutbox.getInstance().addListener(() -> SwingUtilities.invokeLater(table::repaint));
 
-            @Override
-            public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
-                if (value instanceof OrderHistory.Order) {
-                    currentOrder = (OrderHistory.Order) value;
-                    StringBuilder sb = new StringBuilder();
-                    for (OrderHistory.OrderItem item : currentOrder.getItems()) {
-                        sb.append(item.getName()).append(" - ").append(item.getQuantity()).append("个\n");
-                    }
-                    textArea.setText(sb.toString());
-                    textArea.setCaretPosition(0);
-                    
-                    textArea.setBackground(Color.WHITE);
-                    textArea.setForeground(Color.BLACK);
-                    scrollPane.getViewport().setBackground(Color.WHITE);
-                }
-                return scrollPane;
-            }
+        // 设置"购买商品"列的渲染器和编辑器
+        table.getColumnModel().getColumn(2).setCellRenderer(new ItemListRenderer());
+        table.getColumnModel().getColumn(2).setCellEditor(new ItemListCellEditor(orderHistoryModel));
 
-            @Override
-            public Object getCellEditorValue() {
-                return currentOrder;
+        // 创建滚动面板
+        orderScrollPane = new JScrollPane(table);
+        orderScrollPane.getViewport().setBackground(Color.WHITE);
+        orderScrollPane.setBorder(new javax.swing.border.LineBorder(new Color(220, 220, 220), 5, true));
+        orderScrollPane.getVerticalScrollBar().addAdjustmentListener(e -> loadMoreOrdersIfNeeded());
+
+        panel.add(orderScrollPane);
+        return panel;
+    }
+
+    /**
+     * "购买商品"列的渲染器：直接绘制模型中缓存好的商品行（值为 String[]）
+     *
+     * 每次绘制不创建组件、字体或字符串：模型已按可见行数截断，超出时最后一行"……共 N 种商品"也已生成。
+     * 继承 DefaultTableCellRenderer 以沿用其选中颜色、边框以及省略重绘通知的处理。
+     */
+    private static class ItemListRenderer extends DefaultTableCellRenderer {
+        private static final long serialVersionUID = 1L;
+        static final Font ITEM_FONT = new Font("Microsoft YaHei", Font.PLAIN, 12);
+
+        private String[] lines = new String[0];
+
+        ItemListRenderer() {
+            setFont(ITEM_FONT);
+        }
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                boolean hasFocus, int row, int column) {
+            super.getTableCellRendererComponent(table, null, isSelected, hasFocus, row, column);
+            setFont(ITEM_FONT);
+            lines = value instanceof String[] ? (String[]) value : new String[0];
+            return this;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            if (isOpaque()) {
+                g.setColor(getBackground());
+                g.fillRect(0, 0, getWidth(), getHeight());
+            }
+            g.setColor(getForeground());
+            g.setFont(ITEM_FONT);
+            FontMetrics metrics = g.getFontMetrics();
+            Insets insets = getInsets();
+            int x = insets.left + 2;
+            int y = insets.top + 4 + metrics.getAscent();
+            for (String line : lines) {
+                g.drawString(line, x, y);
+                y += metrics.getHeight();
             }
         }
+    }
 
-        // 设置"购买商品"列的渲染器和编辑器
-        table.getColumnModel().getColumn(2).setCellRenderer(itemListRenderer);
-        table.getColumnModel().getColumn(2).setCellEditor(new ItemListCellEditor());
+    /**
+     * "购买商品"列的编辑器：点击单元格时在可滚动的文本框中显示完整的商品列表
+     */
+    private static class ItemListCellEditor extends AbstractCellEditor implements TableCellEditor {
+        private static final long serialVersionUID = 1L;
+        private final OrderHistoryTableModel model;
+        private final JTextArea textArea;
+        private final JScrollPane scrollPane;
+        private OrderHistory.Order currentOrder;
+
+        ItemListCellEditor(OrderHistoryTableModel model) {
+            this.model = model;
+            textArea = new JTextArea();
+            textArea.setFont(ItemListRenderer.ITEM_FONT);
+            textArea.setEditable(false);
+            textArea.setLineWrap(true);
+            textArea.setWrapStyleWord(true);
+            textArea.setBackground(Color.WHITE);
+            textArea.setForeground(Color.BLACK);
+
+            scrollPane = new JScrollPane(textArea);
+            scrollPane.setBorder(BorderFactory.createEmptyBorder());
+            scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+            scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+            scrollPane.getViewport().setBackground(Color.WHITE);
+        }
 
-        // 创建滚动面板
-        JScrollPane scrollPane = new JScrollPane(table);
-        scrollPane.getViewport().setBackground(Color.WHITE);
-        scrollPane.setBorder(new javax.swing.border.LineBorder(new Color(220, 220, 220), 5, true));
+        @Override
+        public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
+            int modelRow = table.convertRowIndexToModel(row);
+            currentOrder = model.getOrder(modelRow);
+            textArea.setText(model.getItemText(modelRow));
+            textArea.setCaretPosition(0);
+            return scrollPane;
+        }
 
-        panel.add(scrollPane);
-        return panel;
+        @Override
+        public Object getCellEditorValue() {
+            return currentOrder;
+        }
     }
 
     private static class GradientPanel extends JPanel {
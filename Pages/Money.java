@@ -0,0 +1,96 @@
+/**
+ * Money - 金额工具类：金额统一以 long 表示，单位为"分"
+ *
+ * 设计说明：
+ * - 金额在程序内部始终是 long 类型的分（如 12.50 元 = 1250），加减乘都是精确的整数运算，
+ *   不创建对象，也没有浮点误差。
+ * - 只在边界上与文本互相转换：解析商品目录/输入框中的价格，显示到界面，写入订单 JSON。
+ * - 解析与格式化都是手写的逐字符处理，不经过 `BigDecimal` 或 `String.format`。
+ */
+public final class Money {
+    private Money() {
+    }
+
+    /**
+     * 把以"元"为单位的金额文本解析为分（如 "12.5" -> 1250），第三位小数四舍五入
+     *
+     * @param text       金额文本，允许前后空白与负号
+     * @param defaultFen 为空或格式错误时的返回值
+     * @return 金额（分）
+     */
+    public static long parse(String text, long defaultFen) {
+        if (text == null) {
+            return defaultFen;
+        }
+        int i = 0;
+        int end = text.length();
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        while (end > i && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (negative || (i < end && text.charAt(i) == '+')) {
+            i++;
+        }
+
+        long yuan = 0;
+        int digits = 0;
+        while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            if (yuan > (Long.MAX_VALUE / 100 - 9) / 10) {
+                return defaultFen; // 溢出
+            }
+            yuan = yuan * 10 + (text.charAt(i++) - '0');
+            digits++;
+        }
+        long fen = 0;
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            int decimals = 0;
+            while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                int d = text.charAt(i++) - '0';
+                if (decimals < 2) {
+                    fen = fen * 10 + d;
+                } else if (decimals == 2 && d >= 5) {
+                    fen++; // 四舍五入
+                }
+                decimals++;
+                digits++;
+            }
+            if (decimals == 1) {
+                fen *= 10;
+            }
+        }
+        if (digits == 0 || i != end) {
+            return defaultFen;
+        }
+        long amount = yuan * 100 + fen;
+        return negative ? -amount : amount;
+    }
+
+    /**
+     * 把金额格式化为"元"，保留两位小数（如 1250 -> "12.50"）
+     */
+    public static String format(long fen) {
+        return appendTo(new StringBuilder(12), fen).toString();
+    }
+
+    /**
+     * 把金额以"元"、两位小数追加到 sb（不创建中间字符串）
+     *
+     * @return sb
+     */
+    public static StringBuilder appendTo(StringBuilder sb, long fen) {
+        if (fen < 0) {
+            sb.append('-');
+        }
+        long abs = Math.abs(fen);
+        long cents = abs % 100;
+        sb.append(abs / 100).append('.');
+        if (cents < 10) {
+            sb.append('0');
+        }
+        return sb.append(cents);
+    }
+}
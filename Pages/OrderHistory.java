@@ -1,22 +1,63 @@
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.Date;
 
 /**
  * OrderHistory - 订单历史管理类
- * 用于记录和管理用户的购买历史
+ * 用于记录和管理用户的购买历史，金额以 long 类型的分表示（见 `Money`）
+ *
+ * 订单同时写入本地订单日志（见 `OrderJournal`），启动时从日志重放恢复历史订单，并用其中的订单号初始化订单号生成器；
+ * 日志无法打开时退化为只保存在内存中。
+ * 新订单的状态为"待上传"，由 `OrderOutbox` 上传到服务器后改为"已完成"；
+ * 结账时订单先以"待上传"状态记录，服务器直接保存后改为"已完成"，服务器拒绝时改为"已取消"；
+ * 发件箱上传时服务器拒绝保存（或订单大到无法发送）的订单改为"上传失败"，不再重试。
+ * 从服务器获取的订单历史通过 `merge` 按订单号合并进来，同样写入本地订单日志，离线时也能查看。
  */
 public class OrderHistory {
+  // 订单状态
+  public static final String STATUS_PENDING_UPLOAD = "待上传";
+  public static final String STATUS_COMPLETED = "已完成";
+  public static final String STATUS_CANCELLED = "已取消";
+  public static final String STATUS_UPLOAD_FAILED = "上传失败";
+
   // 单例实例
   private static OrderHistory instance;
   // 存放订单的列表
   private List<Order> orders;
-  // 订单ID计数器
-  private int orderIdCounter = 1;
+  // 按订单号索引的订单，与 orders 同步维护
+  private final Map<String, Order> ordersById = new HashMap<>();
+  // 订单号生成器（无锁，见 `OrderIdGenerator`）
+  private final OrderIdGenerator idGenerator = OrderIdGenerator.forThisTerminal();
+  // 本地订单日志（为 null 表示无法打开，仅保存在内存中）
+  private OrderJournal journal;
 
-  // 私有构造函数：初始化订单列表
+  // 私有构造函数：初始化订单列表，并从本地订单日志恢复历史订单
   private OrderHistory() {
     orders = new ArrayList<>();
+    try {
+      journal = new OrderJournal(OrderJournal.defaultDirectory());
+    } catch (IOException e) {
+      e.printStackTrace();
+      return;
+    }
+    for (Order order : journal.getRecoveredOrders()) {
+      orders.add(order);
+      ordersById.put(order.getOrderId(), order);
+      idGenerator.observe(order.getOrderId());
+    }
+    // 正常退出时写完尚未落盘的记录
+    OrderJournal opened = journal;
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        opened.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }, "order-journal-close"));
   }
 
   /**
@@ -24,7 +65,7 @@ public class OrderHistory {
    * 
    * @return OrderHistory 单例实例
    */
-  public static OrderHistory getInstance() {
+  public static synchronized OrderHistory getInstance() {
     if (instance == null) {
       instance = new OrderHistory();
     }
@@ -32,25 +73,125 @@ public class OrderHistory {
   }
 
   /**
-   * 创建新订单
+   * 创建新订单（状态为"待上传"）
    * 
-   * @param items      订单商品列表
-   * @param totalPrice 订单总价
+   * @param items    订单商品列表
+   * @param totalFen 订单总价（分）
+   * @param username 下单用户
    * @return 创建的订单
    */
-  public Order createOrder(List<OrderItem> items, double totalPrice) {
-    Order order = new Order("ORD" + String.format("%04d", orderIdCounter++), items, totalPrice);
+  public synchronized Order createOrder(List<OrderItem> items, long totalFen, String username) {
+    return addOrder(new Order(nextOrderId(), items, new Date(), totalFen, STATUS_PENDING_UPLOAD, username));
+  }
+
+  /**
+   * 分配一个新的订单号（订单尚未记录，见 `addOrder`）；线程安全，不加锁
+   *
+   * @return 订单号
+   */
+  public String nextOrderId() {
+    return idGenerator.nextOrderId();
+  }
+
+  /**
+   * 记录一个使用 `nextOrderId` 分配了订单号的订单，并写入本地订单日志
+   *
+   * @param order 订单（状态按调用方给定的保存）
+   * @return 同一个订单
+   */
+  public synchronized Order addOrder(Order order) {
     orders.add(order);
+    ordersById.put(order.getOrderId(), order);
+    journal(journal != null ? journal.appendOrder(order) : null);
     return order;
   }
 
   /**
-   * 获取所有订单
-   * 
-   * @return 订单列表
+   * 修改订单状态并写入本地订单日志
+   *
+   * @param order  订单
+   * @param status 新状态
+   */
+  public synchronized void updateStatus(Order order, String status) {
+    order.setStatus(status);
+    journal(journal != null ? journal.appendStatus(order.getOrderId(), status) : null);
+  }
+
+  /**
+   * 把从服务器获取的订单合并到订单历史：按订单号查找，已有的订单只在状态不同时更新状态，
+   * 没有的订单追加到末尾，变化都写入本地订单日志。耗时只与给定的订单数有关，不重建订单列表，
+   * 重复刷新不会产生重复的订单。
+   *
+   * @param serverOrders 服务器返回的订单
+   * @return 与 serverOrders 顺序一致的、订单历史中的订单实例（订单号为空的订单被跳过）
    */
-  public List<Order> getOrders() {
-    return orders;
+  public synchronized List<Order> merge(List<Order> serverOrders) {
+    List<Order> merged = new ArrayList<>(serverOrders.size());
+    for (Order order : serverOrders) {
+      if (order.getOrderId().isEmpty()) {
+        continue;
+      }
+      Order existing = ordersById.get(order.getOrderId());
+      if (existing == null) {
+        merged.add(addOrder(order));
+      } else {
+        if (!existing.getStatus().equals(order.getStatus())) {
+          updateStatus(existing, order.getStatus());
+        }
+        merged.add(existing);
+      }
+    }
+    return merged;
+  }
+
+  // 日志写入失败只记录错误，不影响内存中的订单
+  private static void journal(CompletableFuture<Void> write) {
+    if (write != null) {
+      write.exceptionally(error -> {
+        error.printStackTrace();
+        return null;
+      });
+    }
+  }
+
+  /**
+   * 获取尚未上传到服务器的订单（按下单顺序）
+   *
+   * @return 订单列表快照
+   */
+  public synchronized List<Order> getPendingUploads() {
+    List<Order> pending = new ArrayList<>();
+    for (Order order : orders) {
+      if (STATUS_PENDING_UPLOAD.equals(order.getStatus())) {
+        pending.add(order);
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * 统计指定状态的订单数
+   *
+   * @param status 订单状态
+   * @return 订单数
+   */
+  public synchronized int countOrders(String status) {
+    int count = 0;
+    for (Order order : orders) {
+      if (status.equals(order.getStatus())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * 获取所有订单（按加入订单历史的顺序，从服务器合并的订单不一定按下单时间排列）
+   *
+   * @return 订单列表快照（与 getPendingUploads 一样在锁内复制，后台线程同时合并或下单也可以安全遍历）
+   */
+  public synchronized List<Order> getOrders() {
+    return new ArrayList<>(orders);
   }
 
   /**
@@ -60,15 +201,25 @@ public class OrderHistory {
     private String orderId;
     private List<OrderItem> items;
     private Date orderDate;
-    private double totalPrice;
-    private String status;
+    // 订单总价（分）
+    private long totalFen;
+    // 状态可能由上传线程修改
+    private volatile String status;
+    // 下单用户（旧版本日志中的订单没有记录，为 null）
+    private String username;
 
-    public Order(String orderId, List<OrderItem> items, double totalPrice) {
+    public Order(String orderId, List<OrderItem> items, long totalFen) {
+      this(orderId, items, new Date(), totalFen, STATUS_COMPLETED, null);
+    }
+
+    public Order(String orderId, List<OrderItem> items, Date orderDate, long totalFen, String status,
+        String username) {
       this.orderId = orderId;
       this.items = new ArrayList<>(items);
-      this.orderDate = new Date();
-      this.totalPrice = totalPrice;
-      this.status = "已完成";
+      this.orderDate = orderDate;
+      this.totalFen = totalFen;
+      this.status = status;
+      this.username = username;
     }
 
     public String getOrderId() {
@@ -83,14 +234,18 @@ public class OrderHistory {
       return orderDate;
     }
 
-    public double getTotalPrice() {
-      return totalPrice;
+    public long getTotalFen() {
+      return totalFen;
     }
 
     public String getStatus() {
       return status;
     }
 
+    public String getUsername() {
+      return username;
+    }
+
     public void setStatus(String status) {
       this.status = status;
     }
@@ -103,14 +258,15 @@ public class OrderHistory {
     private String id;
     private String name;
     private String category;
-    private double price;
+    // 单价（分）
+    private long priceFen;
     private int quantity;
 
-    public OrderItem(String id, String name, String category, double price, int quantity) {
+    public OrderItem(String id, String name, String category, long priceFen, int quantity) {
       this.id = id;
       this.name = name;
       this.category = category;
-      this.price = price;
+      this.priceFen = priceFen;
       this.quantity = quantity;
     }
 
@@ -126,8 +282,8 @@ public class OrderHistory {
       return category;
     }
 
-    public double getPrice() {
-      return price;
+    public long getPriceFen() {
+      return priceFen;
     }
 
     public int getQuantity() {
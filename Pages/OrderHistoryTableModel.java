@@ -0,0 +1,164 @@
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * OrderHistoryTableModel - "我的订单"表格模型
+ *
+ * 设计说明：
+ * - 订单按下单时间从新到旧显示：先放入本机尚未上传（或上传失败）的订单，再逐页追加从服务器查询到的订单
+ *   （见 `OrderQuery`，已合并到 `OrderHistory`），服务器不支持分页查询时改为显示订单历史中的全部订单。
+ * - 模型只保存订单的引用，不预先为每个订单生成一行 `Object[]`。
+ * - 每个订单的显示内容（下单时间、总价文本、"名称 - 数量个"商品行，以及单元格内实际绘制的
+ *   至多 `VISIBLE_ITEM_LINES` 行、超出时最后一行为"……共 N 种商品"）在该行第一次被表格读取时
+ *   生成一次并缓存，绘制时不再拼接字符串；表格只绘制视口内的行，因此即使有十万条订单，打开和滚动也只处理可见的几十行。
+ * - 追加一页只为新增的订单扩容缓存并触发插入事件；已显示的订单号被跳过，
+ *   翻页期间刚上传的本机订单不会显示两次。
+ * - 只应在 EDT 上使用。
+ */
+public class OrderHistoryTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMN_NAMES = { "订单ID", "下单时间", "购买商品", "总价", "状态" };
+    /** "购买商品"单元格内显示的商品行数 */
+    public static final int VISIBLE_ITEM_LINES = 4;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy:MM:dd:HH:mm:ss");
+    private final List<OrderHistory.Order> orders = new ArrayList<>();
+    private final Set<String> shownIds = new HashSet<>();
+    // 按行缓存的显示内容，为 null 表示该行尚未显示过
+    private final List<RowText> rowTexts = new ArrayList<>();
+
+    /**
+     * 清空表格并显示给定的订单
+     *
+     * @param initial 订单（从新到旧）
+     */
+    public void reset(List<OrderHistory.Order> initial) {
+        orders.clear();
+        shownIds.clear();
+        rowTexts.clear();
+        addAll(initial);
+        fireTableDataChanged();
+    }
+
+    /**
+     * 在末尾追加一页更早的订单，跳过已显示的订单
+     *
+     * @param page 订单（从新到旧）
+     */
+    public void append(List<OrderHistory.Order> page) {
+        int first = orders.size();
+        addAll(page);
+        if (orders.size() > first) {
+            fireTableRowsInserted(first, orders.size() - 1);
+        }
+    }
+
+    private void addAll(List<OrderHistory.Order> added) {
+        for (OrderHistory.Order order : added) {
+            if (shownIds.add(order.getOrderId())) {
+                orders.add(order);
+                rowTexts.add(null);
+            }
+        }
+    }
+
+    /**
+     * 获取指定行的订单
+     */
+    public OrderHistory.Order getOrder(int row) {
+        return orders.get(row);
+    }
+
+    /**
+     * 获取指定行的商品列表文本（每个商品一行），用于编辑器中完整显示
+     */
+    public String getItemText(int row) {
+        return String.join("\n", rowText(row).itemLines);
+    }
+
+    @Override
+    public int getRowCount() {
+        return orders.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        // 允许"购买商品"列(索引2)进行编辑，以便查看完整的商品列表
+        return column == 2;
+    }
+
+    /**
+     * "购买商品"列的值为单元格内要绘制的 String[]（至多 VISIBLE_ITEM_LINES 行），其余列为字符串
+     */
+    @Override
+    public Object getValueAt(int row, int column) {
+        switch (column) {
+            case 0:
+                return orders.get(row).getOrderId();
+            case 1:
+                return rowText(row).date;
+            case 2:
+                return rowText(row).shownLines;
+            case 3:
+                return rowText(row).total;
+            default:
+                return orders.get(row).getStatus();
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        // "购买商品"列只读，编辑器仅用于滚动查看
+    }
+
+    private RowText rowText(int row) {
+        RowText text = rowTexts.get(row);
+        if (text == null) {
+            text = new RowText(orders.get(row), dateFormat);
+            rowTexts.set(row, text);
+        }
+        return text;
+    }
+
+    // 一个订单的显示内容（生成后不再变化）
+    private static class RowText {
+        final String date;
+        final String total;
+        final String[] itemLines;
+        // 单元格内绘制的行：商品过多时前 VISIBLE_ITEM_LINES - 1 个商品加一行"……共 N 种商品"
+        final String[] shownLines;
+
+        RowText(OrderHistory.Order order, SimpleDateFormat dateFormat) {
+            date = dateFormat.format(order.getOrderDate());
+            total = "¥" + Money.format(order.getTotalFen());
+            List<OrderHistory.OrderItem> items = order.getItems();
+            itemLines = new String[items.size()];
+            for (int i = 0; i < itemLines.length; i++) {
+                OrderHistory.OrderItem item = items.get(i);
+                itemLines[i] = item.getName() + " - " + item.getQuantity() + "个";
+            }
+            if (itemLines.length > VISIBLE_ITEM_LINES) {
+                shownLines = Arrays.copyOf(itemLines, VISIBLE_ITEM_LINES);
+                shownLines[VISIBLE_ITEM_LINES - 1] = "……共 " + itemLines.length + " 种商品";
+            } else {
+                shownLines = itemLines;
+            }
+        }
+    }
+}
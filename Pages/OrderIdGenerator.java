@@ -0,0 +1,138 @@
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.prefs.Preferences;
+
+/**
+ * OrderIdGenerator - 无锁、按时间递增的 64 位订单号生成器
+ *
+ * 订单号为 "ORD" 加一个 64 位整数的十进制文本，整数从高到低为：
+ * 1 位符号（恒为 0）、41 位毫秒时间戳（自 EPOCH 起，约可用 69 年）、16 位终端号、6 位序号。
+ *
+ * 设计说明：
+ * - 不同终端号的终端各自生成订单号，不需要与服务器或彼此协调，也不会相互重复；
+ *   多终端部署时应通过系统属性 `ascentsys.terminalId` 为每个终端指定不同的终端号。
+ * - 没有指定时，首次运行随机选取终端号并保存在用户偏好设置中（会在标准错误输出中提示）。
+ *   随机选取不能保证唯一：两个终端选中同一终端号、又在同一毫秒生成同一序号时订单号相同，
+ *   服务器会把后一个订单当作重复提交。终端号取 16 位以降低这种概率（38 个终端约为 1%），但不能排除。
+ * - 时间戳与序号合成一个 long 保存在 `AtomicLong` 中，每次用一次 CAS 更新，不加锁：
+ *   同一毫秒内序号递增，序号用完（64 个，远多于一个终端每毫秒的下单数）时借用下一毫秒；
+ *   时钟回拨时继续在上一个时间戳上递增，生成的订单号始终严格递增。
+ * - 启动时用订单日志中本终端生成过的订单号初始化（`observe`），重启后即使时钟回拨也不会重复。
+ * - 旧版本的订单号（"ORD0001" 形式）数值都很小，不会与新订单号重复。
+ * - 生成订单号只做整数运算和一次字符串拼接，不使用 `String.format`。
+ */
+public final class OrderIdGenerator {
+    /** 订单号前缀 */
+    public static final String PREFIX = "ORD";
+    // 时间戳的起点：2024-01-01T00:00:00Z
+    static final long EPOCH = 1704067200000L;
+    static final int NODE_BITS = 16;
+    static final int SEQUENCE_BITS = 6;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final String PREF_NODE = "AscentSys";
+    private static final String PREF_TERMINAL_ID_KEY = "terminalId";
+
+    private final long node;
+    // 上一个订单号的 (时间戳 << SEQUENCE_BITS) | 序号
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * @param node 终端号（0..65535）
+     */
+    OrderIdGenerator(long node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("终端号超出范围：" + node);
+        }
+        this.node = node;
+    }
+
+    /**
+     * 创建使用本终端终端号的生成器：优先使用系统属性，其次读取偏好设置，都没有时随机选取并保存。
+     * 系统属性格式错误或超出范围时忽略并提示，不影响下单。
+     */
+    static OrderIdGenerator forThisTerminal() {
+        String configured = System.getProperty("ascentsys.terminalId");
+        if (configured != null) {
+            try {
+                long node = Long.parseLong(configured.trim());
+                if (node >= 0 && node <= MAX_NODE) {
+                    return new OrderIdGenerator(node);
+                }
+            } catch (NumberFormatException e) {
+                // 按格式错误处理
+            }
+            System.err.println("忽略无效的终端号 ascentsys.terminalId=" + configured + "（应为 0.." + MAX_NODE + "）");
+        }
+        long node;
+        try {
+            Preferences preferences = Preferences.userRoot().node(PREF_NODE);
+            node = preferences.getInt(PREF_TERMINAL_ID_KEY, -1);
+            if (node < 0 || node > MAX_NODE) {
+                node = randomNode();
+                preferences.putInt(PREF_TERMINAL_ID_KEY, (int) node);
+            }
+        } catch (RuntimeException e) {
+            // 偏好设置不可用：本次运行使用随机终端号
+            e.printStackTrace();
+            node = randomNode();
+        }
+        return new OrderIdGenerator(node);
+    }
+
+    // 随机选取终端号并提示：随机终端号不保证与其他终端不同
+    private static long randomNode() {
+        long node = new SecureRandom().nextInt((int) MAX_NODE + 1);
+        System.err.println("未配置终端号，随机选取终端号 " + node
+                + "；多终端部署时请用 -Dascentsys.terminalId=<0.." + MAX_NODE + "> 为每个终端指定不同的终端号");
+        return node;
+    }
+
+    /**
+     * 生成下一个订单号（线程安全，不加锁）
+     *
+     * @return 订单号
+     */
+    public String nextOrderId() {
+        return PREFIX + nextId();
+    }
+
+    /**
+     * 生成下一个 64 位订单号数值（线程安全，不加锁）
+     */
+    public long nextId() {
+        while (true) {
+            long prev = last.get();
+            long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+            // 序号用完时 prev + 1 进位到下一毫秒
+            long next = now > prev ? now : prev + 1;
+            if (last.compareAndSet(prev, next)) {
+                return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 记录一个已存在的订单号：本终端生成过的订单号之后生成的订单号一定更大（其他终端或旧格式的订单号被忽略）
+     *
+     * @param orderId 订单号
+     */
+    public void observe(String orderId) {
+        if (orderId == null || !orderId.startsWith(PREFIX)) {
+            return;
+        }
+        long id;
+        try {
+            id = Long.parseLong(orderId.substring(PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (id <= 0 || ((id >>> SEQUENCE_BITS) & MAX_NODE) != node) {
+            return;
+        }
+        long state = (id >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS | (id & SEQUENCE_MASK);
+        last.accumulateAndGet(state, Math::max);
+    }
+}
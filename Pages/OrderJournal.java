@@ -0,0 +1,475 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * OrderJournal - 本地订单日志：只追加、带校验和的分段文件，程序崩溃后重启可以恢复全部订单
+ *
+ * 文件格式（大端）：
+ * - 段文件 `orders.<段序号>.journal`，头部为 int 魔数、int 格式版本、long 段序号
+ *   （版本 2 的 ORDER 记录在状态之后多一个下单用户名；版本 1 的段仍可读取）
+ * - 之后是若干记录：[int 负载长度][int 负载的 CRC32][负载]
+ * - 负载首字节为记录类型：ORDER（完整订单）或 STATUS（订单状态变化）；字符串为 [unsigned short 长度][UTF-8 字节]
+ *
+ * 设计说明：
+ * - 写入由一个后台线程完成（组提交）：调用方编码好记录放入队列后立即返回，写线程每次取出队列中的全部记录，
+ *   一次写入后只调用一次 `force`，再通知这一批记录已落盘；并发写入时不会每条记录各等一次 fsync。
+ * - 每次启动都新开一个段；当前段超过 SEGMENT_BYTES 后换新段。已封存的段达到 COMPACT_SEGMENTS 个时在后台压缩：
+ *   把这些段重放为每个订单一条 ORDER 记录（状态已合并），写入临时文件后原子替换其中序号最大的段，再删除其余旧段。
+ * - 启动时按段序号顺序读入并重放；遇到长度或校验和不对的记录即认为是崩溃时写了一半，截断该段的剩余部分。
+ *   同一订单号的 ORDER 记录以后出现的为准，因此压缩中途崩溃留下的重复记录不影响结果。
+ * - 段文件读入堆内存而不是内存映射，以免映射中的文件在 Windows 上无法被压缩删除。
+ *   重放时商品 id、名称、类别与状态经字符串池去重，大量历史订单共用同一批字符串，减少常驻内存与 GC 开销。
+ * - 最后一批记录在落盘前（通常只有几毫秒）崩溃会丢失；正常退出时 `close()` 会写完并同步。
+ */
+public class OrderJournal implements Closeable {
+    private static final int MAGIC = 0x41534f4a; // "ASOJ"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final String FILE_PREFIX = "orders.";
+    private static final String FILE_SUFFIX = ".journal";
+    private static final byte TYPE_ORDER = 1;
+    private static final byte TYPE_STATUS = 2;
+
+    // 当前段超过该大小后换新段
+    private static final long SEGMENT_BYTES = 4L * 1024 * 1024;
+    // 已封存的段达到该数目时压缩
+    private static final int COMPACT_SEGMENTS = 4;
+
+    // 写线程收到该记录后退出
+    private static final Pending CLOSE = new Pending(null);
+
+    private final File directory;
+    private final List<OrderHistory.Order> recovered;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // 以下字段只由写线程访问（构造完成后）
+    private FileChannel channel;
+    private long segment;
+    private long segmentSize;
+    private int recordsInSegment;
+
+    /**
+     * 打开日志目录：重放已有的段，然后新开一个段用于追加
+     *
+     * @param directory 日志目录（不存在时创建）
+     */
+    public OrderJournal(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建订单日志目录: " + directory);
+        }
+        this.directory = directory;
+        long[] segments = listSegments(directory);
+        Map<String, OrderHistory.Order> orders = new LinkedHashMap<>();
+        Map<String, String> strings = new HashMap<>();
+        for (int i = 0; i < segments.length; i++) {
+            replay(segmentFile(segments[i]), orders, strings, i == segments.length - 1);
+        }
+        this.recovered = Collections.unmodifiableList(new ArrayList<>(orders.values()));
+        openSegment(segments.length > 0 ? segments[segments.length - 1] + 1 : 1);
+
+        writer = new Thread(this::writeLoop, "order-journal");
+        writer.setDaemon(true);
+        writer.start();
+        if (segments.length >= COMPACT_SEGMENTS) {
+            compactAsync();
+        }
+    }
+
+    /**
+     * 订单日志默认存放目录（快照目录下的 journal）
+     */
+    public static File defaultDirectory() {
+        return new File(CatalogSnapshot.defaultDirectory(), "journal");
+    }
+
+    /**
+     * 获取打开日志时重放得到的订单（按首次写入的顺序）
+     */
+    public List<OrderHistory.Order> getRecoveredOrders() {
+        return recovered;
+    }
+
+    /**
+     * 追加一个新订单
+     *
+     * @return 记录落盘（fsync 完成）后完成的 future
+     */
+    public CompletableFuture<Void> appendOrder(OrderHistory.Order order) {
+        return append(encodeOrder(order));
+    }
+
+    /**
+     * 追加一次订单状态变化
+     *
+     * @return 记录落盘后完成的 future
+     */
+    public CompletableFuture<Void> appendStatus(String orderId, String status) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_STATUS);
+            writeString(out, orderId);
+            writeString(out, status);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return append(bytes.toByteArray());
+    }
+
+    /**
+     * 写完队列中已有的记录并同步到磁盘，然后关闭日志；之后的追加会失败
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待订单日志写入时被中断");
+        }
+    }
+
+    private CompletableFuture<Void> append(byte[] payload) {
+        Pending pending = new Pending(frame(payload));
+        if (closed) {
+            pending.done.completeExceptionally(new IOException("订单日志已关闭"));
+            return pending.done;
+        }
+        queue.add(pending);
+        return pending.done;
+    }
+
+    // 写线程：组提交，每批记录只 fsync 一次
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            batch.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue; // 只通过 CLOSE 退出
+            }
+            queue.drainTo(batch);
+            stop = batch.remove(CLOSE);
+            try {
+                if (!batch.isEmpty()) {
+                    ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                    for (int i = 0; i < buffers.length; i++) {
+                        buffers[i] = ByteBuffer.wrap(batch.get(i).record);
+                        segmentSize += buffers[i].remaining();
+                    }
+                    while (buffers[buffers.length - 1].hasRemaining()) {
+                        channel.write(buffers);
+                    }
+                    channel.force(false);
+                    recordsInSegment += batch.size();
+                }
+                for (Pending pending : batch) {
+                    pending.done.complete(null);
+                }
+                if (!stop && segmentSize >= SEGMENT_BYTES) {
+                    openSegment(segment + 1);
+                    compactAsync();
+                }
+            } catch (IOException e) {
+                for (Pending pending : batch) {
+                    pending.done.completeExceptionally(e);
+                }
+            }
+        }
+        // 关闭过程中才放入队列的记录不再写入
+        for (Pending pending : queue) {
+            pending.done.completeExceptionally(new IOException("订单日志已关闭"));
+        }
+        // 关闭当前段；没有写入任何记录的段直接删除
+        try {
+            channel.close();
+            if (recordsInSegment == 0) {
+                Files.deleteIfExists(segmentFile(segment).toPath());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 关闭当前段（如有）并新建一个段（调用方为构造函数或写线程）
+    private void openSegment(long newSegment) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        File file = segmentFile(newSegment);
+        FileChannel created = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(newSegment).flip();
+        while (header.hasRemaining()) {
+            created.write(header);
+        }
+        created.force(true);
+        channel = created;
+        segment = newSegment;
+        segmentSize = HEADER_SIZE;
+        recordsInSegment = 0;
+    }
+
+    // 已封存的段足够多时在后台线程压缩（同一时间最多一个压缩任务）
+    private void compactAsync() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        long active = segment;
+        Thread thread = new Thread(() -> {
+            try {
+                compact(active);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                compacting.set(false);
+            }
+        }, "order-journal-compact");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // 把序号小于 active 的段合并为一个段：每个订单一条 ORDER 记录
+    private void compact(long active) throws IOException {
+        long[] all = listSegments(directory);
+        int sealed = 0;
+        while (sealed < all.length && all[sealed] < active) {
+            sealed++;
+        }
+        if (sealed < COMPACT_SEGMENTS) {
+            return;
+        }
+        Map<String, OrderHistory.Order> orders = new LinkedHashMap<>();
+        Map<String, String> strings = new HashMap<>();
+        for (int i = 0; i < sealed; i++) {
+            replay(segmentFile(all[i]), orders, strings, false);
+        }
+
+        // 压缩结果沿用序号最大的封存段，重放顺序不变
+        long target = all[sealed - 1];
+        File temp = File.createTempFile(FILE_PREFIX, ".tmp", directory);
+        try (FileOutputStream file = new FileOutputStream(temp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 65536))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(target);
+            for (OrderHistory.Order order : orders.values()) {
+                out.write(frame(encodeOrder(order)));
+            }
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), segmentFile(target).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        for (int i = 0; i < sealed - 1; i++) {
+            Files.deleteIfExists(segmentFile(all[i]).toPath());
+        }
+    }
+
+    // 重放一个段到 orders（strings 为字符串池）；truncateTail 为 true 时截掉末尾写了一半的记录
+    private static void replay(File file, Map<String, OrderHistory.Order> orders, Map<String, String> strings,
+            boolean truncateTail) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("订单日志段过大: " + file);
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+                // 读满为止
+            }
+            buffer.flip();
+        }
+        int version = buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC ? buffer.getInt() : 0;
+        if (version < 1 || version > FORMAT_VERSION) {
+            // 头部都没写完的段（新建时崩溃）不含任何记录
+            System.err.println("跳过格式错误的订单日志段: " + file);
+            return;
+        }
+        buffer.getLong();
+
+        CRC32 crc = new CRC32();
+        int good = buffer.position();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(payload, version, orders, strings);
+            buffer.position(buffer.position() + length);
+            good = buffer.position();
+        }
+        if (good < buffer.limit()) {
+            System.err.println("订单日志段末尾有 " + (buffer.limit() - good) + " 字节不完整的记录: " + file);
+            if (truncateTail) {
+                try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    out.truncate(good);
+                    out.force(true);
+                }
+            }
+        }
+    }
+
+    private static void apply(ByteBuffer payload, int version, Map<String, OrderHistory.Order> orders,
+            Map<String, String> strings) {
+        byte type = payload.get();
+        if (type == TYPE_ORDER) {
+            String orderId = readString(payload);
+            Date date = new Date(payload.getLong());
+            long totalFen = payload.getLong();
+            String status = pooled(strings, readString(payload));
+            String username = version >= 2 ? pooled(strings, readString(payload)) : "";
+            if (username.isEmpty()) {
+                username = null;
+            }
+            int count = payload.getInt();
+            List<OrderHistory.OrderItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = pooled(strings, readString(payload));
+                String name = pooled(strings, readString(payload));
+                String category = pooled(strings, readString(payload));
+                items.add(new OrderHistory.OrderItem(id, name, category, payload.getLong(), payload.getInt()));
+            }
+            orders.put(orderId, new OrderHistory.Order(orderId, items, date, totalFen, status, username));
+        } else if (type == TYPE_STATUS) {
+            OrderHistory.Order order = orders.get(readString(payload));
+            String status = pooled(strings, readString(payload));
+            if (order != null) {
+                order.setStatus(status);
+            }
+        }
+        // 未知类型（更高版本写入）忽略
+    }
+
+    private static String pooled(Map<String, String> strings, String value) {
+        String existing = strings.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    private static byte[] encodeOrder(OrderHistory.Order order) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_ORDER);
+            writeString(out, order.getOrderId());
+            out.writeLong(order.getOrderDate().getTime());
+            out.writeLong(order.getTotalFen());
+            writeString(out, order.getStatus());
+            writeString(out, order.getUsername());
+            List<OrderHistory.OrderItem> items = order.getItems();
+            out.writeInt(items.size());
+            for (OrderHistory.OrderItem item : items) {
+                writeString(out, item.getId());
+                writeString(out, item.getName());
+                writeString(out, item.getCategory());
+                out.writeLong(item.getPriceFen());
+                out.writeInt(item.getQuantity());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // 给负载加上长度与校验和
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return record.array();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, 0xFFFF);
+        out.writeShort(length);
+        out.write(bytes, 0, length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private File segmentFile(long number) {
+        return new File(directory, FILE_PREFIX + number + FILE_SUFFIX);
+    }
+
+    // 目录中所有段的序号（递增）
+    private static long[] listSegments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return new long[0];
+        }
+        long[] numbers = new long[files.length];
+        int count = 0;
+        for (File f : files) {
+            String name = f.getName();
+            try {
+                numbers[count] = Long.parseLong(
+                        name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException e) {
+                // 忽略无关文件
+            }
+        }
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    // 等待写入的记录
+    private static class Pending {
+        final byte[] record;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(byte[] record) {
+            this.record = record;
+        }
+    }
+}
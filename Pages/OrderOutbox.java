@@ -0,0 +1,401 @@
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderOutbox - 待上传订单的发件箱：下单时订单先保存在本地，再由后台线程上传到服务器
+ *
+ * 设计说明：
+ * - 服务器可达时结账先用一个请求直接下单（操作码 14，见 `ShopList`）；服务器不支持或请求失败时，
+ *   结账只需创建订单（状态"待上传"，写入本地订单日志）并放入发件箱，不再等待服务器。
+ * - 发件箱不另存文件：待上传的订单就是订单日志中状态为"待上传"的订单，上传成功后把状态改为"已完成"
+ *   （同样写入日志）；重启后从 `OrderHistory` 中找出仍为"待上传"的订单重新排队。
+ * - 单个后台线程按下单顺序上传，多个订单合成一批用一个请求发送（操作码 8），服务器逐个返回结果：
+ *   新订单入队后最多等待 BATCH_WINDOW_MS 再发送，期间到达的订单一起发出；积压的订单（重启、
+ *   网络恢复后）按 MAX_BATCH_ORDERS 个或 MAX_BATCH_BYTES 字节一批连续发送。只有一个订单时仍用操作码 4，
+ *   服务器不支持批量上传时退回逐个上传，过一段时间再尝试批量。
+ * - 服务器支持时以二进制编码上传（操作码 10，见 `WireCodec`），体积约为 JSON 的几分之一；
+ *   不支持时退回 JSON。
+ * - 请求失败（网络错误、超时）后按指数退避重试未成功的订单：
+ *   从 1 秒起每次翻倍，最长 5 分钟，并加入随机抖动，避免服务器恢复时所有客户端同时重试。
+ * - 服务器对某个订单返回失败是明确的拒绝，重试也不会成功；单帧模式或旧协议下大到无法发送的订单同样如此。
+ *   这些订单改为"上传失败"并移出队列，不阻塞后面的订单，数量通过 `getRejectedCount()` 显示给用户。
+ * - 请求中带有幂等键 `idempotencyKey`（即订单号），服务器据此识别重复提交，
+ *   因此响应丢失后重试同一订单不会在服务器上产生重复订单。
+ * - 队列状态只在后台线程上修改，界面通过 `getDepth()` 等方法读取快照；
+ *   入队、上传成功、安排重试时通知监听器（在后台线程上调用）。
+ */
+public class OrderOutbox {
+    // 重试间隔的下限与上限（毫秒）
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    // 一批最多包含的订单数，以及请求内容的字节上限（服务器只支持单帧协议时请求不能超过 64KB）
+    private static final int MAX_BATCH_ORDERS = 50;
+    private static final int MAX_BATCH_BYTES = 60000;
+    // 新订单入队后最多等待多久再发送，以便与随后的订单合成一批（毫秒）
+    private static final long BATCH_WINDOW_MS = 200;
+    // 服务器不支持批量上传后，多久再尝试批量（毫秒）
+    private static final long BATCH_RETRY_INTERVAL_MS = 60000;
+
+    // 单例实例
+    private static OrderOutbox instance;
+
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "order-outbox");
+        t.setDaemon(true);
+        return t;
+    });
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // 以下字段只在后台线程上访问
+    private final Deque<OrderHistory.Order> queue = new ArrayDeque<>();
+    // 正在上传（此时不再发送下一个）
+    private boolean sending;
+    // 已安排的重试（为 null 表示没有等待中的重试）
+    private ScheduledFuture<?> retry;
+    // 等待凑批的定时发送（为 null 表示没有）
+    private ScheduledFuture<?> flush;
+    // 最近一次发现服务器不支持批量上传的时间
+    private long batchUnsupportedSince = -1;
+    // 队首订单已连续失败的次数
+    private int failures;
+
+    // 供界面读取的状态快照
+    private volatile int depth;
+    private volatile long oldestOrderTime;
+    private volatile long nextRetryTime;
+    private volatile String lastError;
+    // 状态为"上传失败"的订单数（包括以前运行时被拒绝的）
+    private volatile int rejectedCount;
+
+    // 私有构造函数：把上次未上传完的订单重新排队
+    private OrderOutbox() {
+        List<OrderHistory.Order> pending = OrderHistory.getInstance().getPendingUploads();
+        rejectedCount = OrderHistory.getInstance().countOrders(OrderHistory.STATUS_UPLOAD_FAILED);
+        scheduler.execute(() -> {
+            queue.addAll(pending);
+            changed();
+            sendNext();
+        });
+    }
+
+    /**
+     * 获取全局唯一发件箱实例（第一次调用时会从本地订单日志恢复，应尽量在后台线程调用）
+     *
+     * @return OrderOutbox 单例实例
+     */
+    public static synchronized OrderOutbox getInstance() {
+        if (instance == null) {
+            instance = new OrderOutbox();
+        }
+        return instance;
+    }
+
+    /**
+     * 注册监听器：待上传订单数或重试状态变化时在后台线程上调用
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /** 移除监听器 */
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 把新订单放入发件箱，立即返回
+     *
+     * @param order 状态为"待上传"的订单
+     */
+    public void submit(OrderHistory.Order order) {
+        scheduler.execute(() -> {
+            // 发件箱首次创建时可能已经从订单历史中收到了这个订单
+            if (!queue.contains(order)) {
+                queue.add(order);
+                changed();
+            }
+            if (queue.size() >= MAX_BATCH_ORDERS) {
+                sendNext();
+            } else if (flush == null && !sending && retry == null) {
+                // 稍等片刻，与随后的订单合成一批
+                flush = scheduler.schedule(this::sendNext, BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * 取消等待中的退避，立即重试（如用户点击"立即重试"）
+     */
+    public void retryNow() {
+        scheduler.execute(() -> {
+            if (retry != null) {
+                retry.cancel(false);
+                retry();
+            }
+        });
+    }
+
+    /** 获取待上传的订单数 */
+    public int getDepth() {
+        return depth;
+    }
+
+    /** 获取最早一笔待上传订单的下单时间（毫秒），没有待上传订单时返回 0 */
+    public long getOldestOrderTime() {
+        return oldestOrderTime;
+    }
+
+    /** 获取下次重试的时间（毫秒），当前没有等待重试时返回 0 */
+    public long getNextRetryTime() {
+        return nextRetryTime;
+    }
+
+    /** 获取被服务器拒绝、不再上传的订单数（状态为"上传失败"） */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /** 获取最近一次上传失败的原因，没有失败时返回 null */
+    public String getLastError() {
+        return lastError;
+    }
+
+    // 上传队首的一批订单（后台线程）
+    private void sendNext() {
+        if (flush != null) {
+            flush.cancel(false);
+            flush = null;
+        }
+        if (sending || retry != null || queue.isEmpty()) {
+            return;
+        }
+        if (ServerClient.getInstance().preferBinary()) {
+            sendBinary();
+            return;
+        }
+        boolean batchSupported = batchUnsupportedSince < 0
+                || System.currentTimeMillis() - batchUnsupportedSince >= BATCH_RETRY_INTERVAL_MS;
+        List<OrderHistory.Order> batch = new ArrayList<>();
+        StringBuilder payload = new StringBuilder("[\n");
+        int bytes = 2;
+        for (OrderHistory.Order order : queue) {
+            String json = toJson(order);
+            int size = json.getBytes(StandardCharsets.UTF_8).length + 2;
+            if (!batch.isEmpty() && (!batchSupported || batch.size() == MAX_BATCH_ORDERS
+                    || bytes + size > MAX_BATCH_BYTES)) {
+                break;
+            }
+            if (!batch.isEmpty()) {
+                payload.append(",\n");
+            }
+            batch.add(order);
+            payload.append(json);
+            bytes += size;
+        }
+        payload.append("\n]");
+        sending = true;
+
+        if (batch.size() == 1) {
+            ServerClient.getInstance().submitBoolean(ServerClient.OP_SAVE_ORDER, toJson(batch.get(0)))
+                    .whenComplete((saved, error) -> scheduler.execute(
+                            () -> onResult(batch, error == null ? new byte[] { (byte) (saved ? 1 : 0) } : null, error)));
+            return;
+        }
+        ServerClient.getInstance().submit(ServerClient.OP_SAVE_ORDERS, payload.toString())
+                .whenComplete((results, error) -> scheduler.execute(() -> {
+                    if (ServerClient.isUnsupported(error) || (error == null && results.length != batch.size())) {
+                        // 服务器不支持批量上传：改为逐个上传，不算作失败
+                        batchUnsupportedSince = System.currentTimeMillis();
+                        sending = false;
+                        sendNext();
+                        return;
+                    }
+                    onResult(batch, results, error);
+                }));
+    }
+
+    // 以二进制编码上传队首的一批订单，一个订单也使用批量操作码（后台线程）
+    private void sendBinary() {
+        WireCodec.OrderBatch payload = new WireCodec.OrderBatch();
+        List<OrderHistory.Order> batch = new ArrayList<>();
+        for (OrderHistory.Order order : queue) {
+            if (batch.size() == MAX_BATCH_ORDERS || !payload.add(order, MAX_BATCH_BYTES)) {
+                break;
+            }
+            batch.add(order);
+        }
+        sending = true;
+
+        ServerClient client = ServerClient.getInstance();
+        client.submit(ServerClient.OP_SAVE_ORDERS_BINARY, payload::writeTo)
+                .whenComplete((results, error) -> scheduler.execute(() -> {
+                    if (ServerClient.isUnsupported(error) || (error == null && results.length != batch.size())) {
+                        // 服务器不支持二进制编码：改用 JSON 上传，不算作失败
+                        client.binaryUnsupported();
+                        sending = false;
+                        sendNext();
+                        return;
+                    }
+                    onResult(batch, results, error);
+                }));
+    }
+
+    // 处理一批订单的上传结果：results 为每个订单一个字节的布尔值，请求失败时为 null（后台线程）。
+    // 服务器返回失败或订单过大的订单不再重试，只有请求失败的订单退避后重试
+    private void onResult(List<OrderHistory.Order> batch, byte[] results, Throwable error) {
+        sending = false;
+        // 一批中只有第一个订单可以单独超过大小上限，请求过大说明这个订单本身无法发送
+        boolean tooLarge = results == null && batch.size() == 1 && ServerClient.isTooLarge(error);
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        boolean retryNeeded = false;
+        for (int i = 0; i < batch.size(); i++) {
+            OrderHistory.Order order = batch.get(i);
+            if (results != null && results[i] != 0) {
+                OrderHistory.getInstance().updateStatus(order, OrderHistory.STATUS_COMPLETED);
+                queue.remove(order);
+            } else if (results != null || tooLarge) {
+                System.err.println("订单 " + order.getOrderId() + " 上传失败，不再重试："
+                        + (tooLarge ? error.getMessage() : "服务器拒绝保存"));
+                OrderHistory.getInstance().updateStatus(order, OrderHistory.STATUS_UPLOAD_FAILED);
+                queue.remove(order);
+                rejectedCount++;
+            } else {
+                retryNeeded = true;
+            }
+        }
+        if (!retryNeeded) {
+            failures = 0;
+            lastError = null;
+            changed();
+            sendNext();
+            return;
+        }
+
+        // 请求失败的订单留在队首，退避后重试
+        failures++;
+        lastError = String.valueOf(error.getMessage());
+        long backoff = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(failures - 1, 20));
+        // 在 [backoff/2, backoff] 之间随机取值
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        nextRetryTime = System.currentTimeMillis() + delay;
+        retry = scheduler.schedule(this::retry, delay, TimeUnit.MILLISECONDS);
+        changed();
+    }
+
+    // 退避结束，重新上传队首订单（后台线程）
+    private void retry() {
+        retry = null;
+        nextRetryTime = 0;
+        changed();
+        sendNext();
+    }
+
+    // 更新状态快照并通知监听器（后台线程）
+    private void changed() {
+        OrderHistory.Order oldest = queue.peek();
+        depth = queue.size();
+        oldestOrderTime = oldest != null ? oldest.getOrderDate().getTime() : 0;
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    // 构建上传订单的 JSON（状态按服务器上的最终状态"已完成"发送）
+    static String toJson(OrderHistory.Order order) {
+        return toJson(order, -1, null);
+    }
+
+    // 构建结账请求的 JSON（操作码 14）：在上传订单的基础上加入下单时的目录版本（为负时省略），
+    // 以及每个商品下单时看到的库存（seenStock 为 null 时省略，表中没有的商品为 -1）
+    static String toJson(OrderHistory.Order order, long catalogVersion, Map<String, Integer> seenStock) {
+        StringBuilder orderJson = new StringBuilder();
+        orderJson.append("    {\n");
+        if (catalogVersion >= 0) {
+            orderJson.append("      \"catalogVersion\": ").append(catalogVersion).append(",\n");
+        }
+        appendString(orderJson.append("      \"orderId\": "), order.getOrderId()).append(",\n");
+        appendString(orderJson.append("      \"idempotencyKey\": "), order.getOrderId()).append(",\n");
+        appendString(orderJson.append("      \"username\": "), order.getUsername()).append(",\n");
+        orderJson.append("      \"orderDate\": \"").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(order.getOrderDate())).append("\",\n");
+        Money.appendTo(orderJson.append("      \"totalPrice\": \""), order.getTotalFen()).append("\",\n");
+        appendString(orderJson.append("      \"status\": "), OrderHistory.STATUS_COMPLETED).append(",\n");
+        orderJson.append("      \"items\": [\n");
+
+        List<OrderHistory.OrderItem> items = order.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            OrderHistory.OrderItem item = items.get(i);
+            orderJson.append("        {\n");
+            appendString(orderJson.append("          \"id\": "), item.getId()).append(",\n");
+            appendString(orderJson.append("          \"name\": "), item.getName()).append(",\n");
+            appendString(orderJson.append("          \"category\": "), item.getCategory()).append(",\n");
+            Money.appendTo(orderJson.append("          \"price\": \""), item.getPriceFen()).append("\",\n");
+            if (seenStock != null) {
+                Integer stock = seenStock.get(item.getId());
+                orderJson.append("          \"stock\": ").append(stock != null ? stock : -1).append(",\n");
+            }
+            orderJson.append("          \"quantity\": ").append(item.getQuantity()).append("\n");
+            orderJson.append("        }");
+            if (i < items.size() - 1) {
+                orderJson.append(",");
+            }
+            orderJson.append("\n");
+        }
+        orderJson.append("      ]\n");
+        orderJson.append("    }");
+        return orderJson.toString();
+    }
+
+    // 追加带引号的 JSON 字符串：转义引号、反斜杠与控制字符（null 按空串处理）
+    static StringBuilder appendString(StringBuilder out, String value) {
+        out.append('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        out.append("\\\"");
+                        break;
+                    case '\\':
+                        out.append("\\\\");
+                        break;
+                    case '\n':
+                        out.append("\\n");
+                        break;
+                    case '\r':
+                        out.append("\\r");
+                        break;
+                    case '\t':
+                        out.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                            out.append("\\u");
+                            String hex = Integer.toHexString(c);
+                            for (int pad = hex.length(); pad < 4; pad++) {
+                                out.append('0');
+                            }
+                            out.append(hex);
+                        } else {
+                            out.append(c);
+                        }
+                        break;
+                }
+            }
+        }
+        return out.append('"');
+    }
+}
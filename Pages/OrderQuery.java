@@ -0,0 +1,261 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * OrderQuery - 按条件分页查询服务器上的订单历史（操作码 15）
+ *
+ * 设计说明：
+ * - 查询条件（用户、下单时间范围、状态、每页数量）在创建时确定，第一页为最新的订单，
+ *   `nextPage()` 依次取更早的一页，直到服务器表示没有更多订单。
+ * - 翻页使用服务器返回的游标（如最后一个订单的"下单时间+订单号"），客户端只原样传回，不使用偏移量：
+ *   翻页期间有新订单时不会重复或遗漏，服务器也不必跳过前面的订单。
+ * - 每页响应边接收边用 `JsonReader` 解析为完整的 `OrderHistory.Order`（含商品），不先拼成字符串。
+ * - 服务器不支持分页查询时，`loadAll` 退回一次取回全部订单的旧请求（操作码 11 或 5），同样解析出完整的订单。
+ * - 只应在 EDT 上使用：`nextPage()` 返回的 future 在 EDT 上完成，游标也只在 EDT 上更新。
+ *   同一时间只应有一个翻页请求在途。
+ */
+public class OrderQuery {
+    /** 默认每页的订单数 */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final String[] PAGE_FIELDS = { "orders", "next" };
+    private static final String[] ORDER_FIELDS = { "orderId", "username", "orderDate", "totalPrice", "status",
+            "items" };
+    private static final String[] ITEM_FIELDS = { "id", "name", "category", "price", "quantity" };
+
+    // 请求中游标之前的部分："用户名\n起始时间\n结束时间\n状态\n"
+    private final String filter;
+    private final int pageSize;
+    // 下一页的游标，第一页为空串
+    private String cursor = "";
+    private boolean exhausted;
+
+    /**
+     * @param username 用户名
+     * @param fromTime 最早的下单时间（毫秒，含），0 表示不限
+     * @param toTime   最晚的下单时间（毫秒，不含），0 表示不限
+     * @param status   订单状态，null 或空串表示不限
+     * @param pageSize 每页的订单数
+     */
+    public OrderQuery(String username, long fromTime, long toTime, String status, int pageSize) {
+        this.filter = username + "\n" + (fromTime > 0 ? String.valueOf(fromTime) : "") + "\n"
+                + (toTime > 0 ? String.valueOf(toTime) : "") + "\n" + (status != null ? status : "") + "\n";
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * 是否还有更早的订单可以加载
+     */
+    public boolean hasMore() {
+        return !exhausted;
+    }
+
+    /**
+     * 是否还没有成功加载过任何一页
+     */
+    public boolean isFirstPage() {
+        return cursor.isEmpty() && !exhausted;
+    }
+
+    /**
+     * 加载下一页（更早的订单）
+     *
+     * @return 该页的订单（从新到旧），在 EDT 上完成；服务器不支持时以 `ServerClient.isUnsupported` 为 true 的异常完成
+     */
+    public CompletableFuture<List<OrderHistory.Order>> nextPage() {
+        String request = filter + cursor + "\n" + pageSize;
+        return ServerClient.getInstance().callAsync(() -> fetch(request))
+                .thenApplyAsync(page -> {
+                    cursor = page.next;
+                    exhausted = page.next.isEmpty();
+                    return page.orders;
+                }, ServerClient.EDT);
+    }
+
+    /**
+     * 一次取回用户的全部订单（服务器不支持分页查询时使用）；服务器支持时使用二进制编码
+     *
+     * @param username 用户名
+     * @return 全部订单（按服务器返回的顺序），在后台线程上完成
+     */
+    public static CompletableFuture<List<OrderHistory.Order>> loadAll(String username) {
+        return ServerClient.getInstance().callAsync(() -> {
+            List<OrderHistory.Order> orders = ServerClient.getInstance().preferBinary() ? loadBinary(username) : null;
+            return orders != null ? orders : loadJson(username);
+        });
+    }
+
+    // 以二进制编码请求订单历史（后台线程）；服务器不支持时返回 null
+    private static List<OrderHistory.Order> loadBinary(String username) throws IOException {
+        ServerClient client = ServerClient.getInstance();
+        InputStream in;
+        try {
+            in = client.openStream(ServerClient.OP_LOAD_ORDERS_BINARY, WireCodec.VERSION + "\n" + username);
+        } catch (IOException e) {
+            if (ServerClient.isUnsupported(e)) {
+                client.binaryUnsupported();
+            }
+            return null;
+        }
+        try (WireCodec.Decoder decoder = WireCodec.Decoder.open(in)) {
+            if (decoder == null) {
+                client.binaryUnsupported();
+                return null;
+            }
+            return decoder.readOrders();
+        }
+    }
+
+    // 以 JSON 格式请求订单历史（后台线程）：响应为 1 个字节的布尔值（是否有订单），其后为订单 JSON 数组
+    private static List<OrderHistory.Order> loadJson(String username) throws IOException {
+        List<OrderHistory.Order> orders = new ArrayList<>();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        try (InputStream in = ServerClient.getInstance().openStream(ServerClient.OP_LOAD_ORDERS, username)) {
+            int exists = in.read();
+            if (exists <= 0) {
+                return orders;
+            }
+            try (JsonReader reader = new JsonReader(in)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    orders.add(readOrder(reader, dateFormat));
+                }
+                reader.endArray();
+            }
+        }
+        return orders;
+    }
+
+    // 请求一页并解析响应 {"orders":[...],"next":"游标"}（后台线程）
+    private static Page fetch(String request) throws IOException {
+        Page page = new Page();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        try (JsonReader reader = new JsonReader(
+                ServerClient.getInstance().openStream(ServerClient.OP_QUERY_ORDERS, request))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextNameIndex(PAGE_FIELDS)) {
+                    case 0:
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            page.orders.add(readOrder(reader, dateFormat));
+                        }
+                        reader.endArray();
+                        break;
+                    case 1:
+                        page.next = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        return page;
+    }
+
+    /**
+     * 解析一个订单对象（格式与保存订单的请求相同，见 `ServerClient` 操作码 4）
+     *
+     * @param dateFormat "yyyy-MM-dd HH:mm:ss" 格式，下单时间也可以是毫秒数
+     */
+    static OrderHistory.Order readOrder(JsonReader reader, SimpleDateFormat dateFormat) throws IOException {
+        String orderId = "";
+        String username = null;
+        Date orderDate = null;
+        long totalFen = 0;
+        String status = OrderHistory.STATUS_COMPLETED;
+        List<OrderHistory.OrderItem> items = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextNameIndex(ORDER_FIELDS)) {
+                case 0:
+                    orderId = reader.nextString();
+                    break;
+                case 1:
+                    username = reader.nextPooledString();
+                    break;
+                case 2:
+                    orderDate = parseDate(reader.nextString(), dateFormat);
+                    break;
+                case 3:
+                    totalFen = Money.parse(reader.nextString(), 0);
+                    break;
+                case 4:
+                    status = reader.nextPooledString();
+                    break;
+                case 5:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        items.add(readItem(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new OrderHistory.Order(orderId, items, orderDate != null ? orderDate : new Date(0), totalFen, status,
+                username == null || username.isEmpty() ? null : username);
+    }
+
+    private static OrderHistory.OrderItem readItem(JsonReader reader) throws IOException {
+        String id = "";
+        String name = "";
+        String category = "";
+        long priceFen = 0;
+        int quantity = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextNameIndex(ITEM_FIELDS)) {
+                case 0:
+                    id = reader.nextPooledString();
+                    break;
+                case 1:
+                    name = reader.nextPooledString();
+                    break;
+                case 2:
+                    category = reader.nextPooledString();
+                    break;
+                case 3:
+                    priceFen = Money.parse(reader.nextString(), 0);
+                    break;
+                case 4:
+                    quantity = (int) Math.max(0, Math.min(Integer.MAX_VALUE, reader.nextLong(0)));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new OrderHistory.OrderItem(id, name, category, priceFen, quantity);
+    }
+
+    // "2024-05-01 12:30:00" 或毫秒数，无法解析时返回 null
+    private static Date parseDate(String text, SimpleDateFormat dateFormat) {
+        if (!text.isEmpty() && text.chars().allMatch(Character::isDigit)) {
+            try {
+                return new Date(Long.parseLong(text));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return dateFormat.parse(text, new ParsePosition(0));
+    }
+
+    // 一页查询结果
+    private static class Page {
+        final List<OrderHistory.Order> orders = new ArrayList<>();
+        String next = "";
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * PagedCatalogModel - 按需分页加载的药品表格模型
+ *
+ * 设计说明：
+ * - 行数取自数据源报告的商品总数，但只有被 JTable 实际绘制（即处于滚动视口内）的行才会触发加载。
+ * - 数据按固定大小的页缓存，缓存按最近访问顺序淘汰，内存中最多保留 `MAX_CACHED_PAGES` 页。
+ * - 页的加载在后台 I/O 线程进行，加载完成后回到 EDT 写入缓存并只刷新该页对应的行。
+ * - 尚未加载的行先显示占位文字，不阻塞绘制。加载失败的页记录下来按指数退避重试，
+ *   不会在每次绘制时重新请求；到了重试时间刷新该页的行，仍在视口内时才会再次加载
+ *   （第一页或总行数未知时直接重新加载，期间显示一行失败提示）。
+ * - 服务器推送的价格与库存变化直接写入已缓存的行，并记录下来，之后加载的页同样按记录覆盖。
+ *   数据源每次返回当前数据时（服务器分页），推送之后才发出的页请求已包含该变化，记录随即删除；
+ *   快照数据源不会包含推送，记录一直保留到数据源被替换，记录过多时 `hasManyOverrides` 提示调用方重新同步。
+ *
+ * 列与 `ShopList` 的内存表格一致：ID、药品名称、类别、价格、库存、操作。
+ */
+public class PagedCatalogModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    // 每页行数
+    static final int PAGE_SIZE = 200;
+    // 最多缓存的页数
+    private static final int MAX_CACHED_PAGES = 10;
+    // 推送记录超过该数量时建议调用方换用新的数据源
+    private static final int MAX_OVERRIDES = 1000;
+    // 加载失败后重试的等待时间下限与上限（毫秒）
+    private static final int RETRY_INITIAL_MS = 1000;
+    private static final int RETRY_MAX_MS = 30000;
+
+    /**
+     * 分页数据源：按偏移量和数量读取一页商品
+     */
+    public interface PageSource {
+        /**
+         * 读取一页数据（在后台线程调用）
+         *
+         * @param offset   起始行
+         * @param limit    最多读取的行数
+         * @param category 类别过滤，"全部" 表示不过滤
+         * @return 该页数据及当前商品总数
+         */
+        Page load(int offset, int limit, String category) throws IOException;
+
+        /**
+         * 是否为某一时刻的快照：快照不包含之后推送的变化，默认每次加载都返回当前数据
+         */
+        default boolean isSnapshot() {
+            return false;
+        }
+    }
+
+    /**
+     * 一页商品数据
+     */
+    public static class Page {
+        private final int total;
+        private final Object[][] rows;
+
+        public Page(int total, Object[][] rows) {
+            this.total = total;
+            this.rows = rows;
+        }
+
+        /** 获取过滤后的商品总数 */
+        public int getTotal() { return total; }
+
+        /** 获取本页的行数据，每行由 `displayRow` 创建 */
+        public Object[][] getRows() { return rows; }
+    }
+
+    /**
+     * 创建一行显示用的数据：页中的行直接用于绘制，价格与库存在读取一页时格式化为文本
+     *
+     * @param priceFen 单价（分）
+     * @param stock    库存，小于 0 表示未知（显示为空）
+     * @return { id, name, category, 价格文本, 库存文本, "操作" }
+     */
+    public static Object[] displayRow(String id, String name, String category, long priceFen, int stock) {
+        return new Object[] { id, name, category, Money.format(priceFen), stock < 0 ? "" : String.valueOf(stock),
+                "操作" };
+    }
+
+    private final String[] columnNames;
+    private PageSource source;
+    // 页号 -> 行数据（按访问顺序，超出上限时淘汰最久未访问的页）
+    private final Map<Integer, Object[][]> pages = new LinkedHashMap<Integer, Object[][]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // 正在加载中的页，避免重复请求
+    private final Set<Integer> loading = new HashSet<>();
+    // 加载失败的页：页号 -> { 可以重试的时间, 本次退避的时间 }（毫秒）
+    private final Map<Integer, long[]> failures = new HashMap<>();
+    // 服务器推送的变化：商品 id -> 覆盖的价格与库存
+    private final Map<String, PushedChange> overrides = new HashMap<>();
+    // 每收到一次推送递增，用来判断页请求是否发生在推送之后
+    private long updateSequence;
+
+    private int rowCount;
+    private String category = "全部";
+    // 每次切换类别递增，丢弃旧类别的迟到结果
+    private int generation;
+
+    /**
+     * @param columnNames 列名
+     * @param source      分页数据源
+     * @param firstPage   已经同步取到的第一页（用于确定总行数并立即显示）
+     */
+    public PagedCatalogModel(String[] columnNames, PageSource source, Page firstPage) {
+        this.columnNames = columnNames;
+        this.source = source;
+        this.rowCount = firstPage.getTotal();
+        pages.put(0, firstPage.getRows());
+    }
+
+    /**
+     * 整体替换数据源（如后台下载好新的目录快照后），原有缓存全部作废
+     *
+     * @param source    新数据源
+     * @param firstPage 新数据源中当前类别的第一页
+     */
+    public void replaceSource(PageSource source, Page firstPage) {
+        this.source = source;
+        generation++;
+        pages.clear();
+        loading.clear();
+        failures.clear();
+        // 新数据源已包含此前推送的变化
+        overrides.clear();
+        pages.put(0, firstPage.getRows());
+        rowCount = firstPage.getTotal();
+        fireTableDataChanged();
+    }
+
+    /**
+     * 切换类别过滤：清空缓存并重新加载第一页
+     *
+     * @param category 类别名称，"全部" 表示不过滤
+     */
+    public void setCategory(String category) {
+        this.category = category;
+        generation++;
+        pages.clear();
+        loading.clear();
+        failures.clear();
+        rowCount = 0;
+        fireTableDataChanged();
+        requestPage(0);
+    }
+
+    /**
+     * 在已缓存的页中查找商品所在的行
+     *
+     * @param id 商品 id
+     * @return 行数据，未缓存时返回 null
+     */
+    public Object[] findCachedRow(String id) {
+        for (Object[][] rows : pages.values()) {
+            for (Object[] row : rows) {
+                if (id.equals(row[0])) {
+                    return row;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在已缓存的页中查找商品所在的行号
+     *
+     * @param id 商品 id
+     * @return 行号，未缓存时返回 -1
+     */
+    public int findCachedRowIndex(String id) {
+        for (Map.Entry<Integer, Object[][]> entry : pages.entrySet()) {
+            Object[][] rows = entry.getValue();
+            for (int i = 0; i < rows.length; i++) {
+                if (id.equals(rows[i][0])) {
+                    return entry.getKey() * PAGE_SIZE + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 更新单个商品的价格与库存（服务器推送的变化），商品所在的页已缓存时只刷新该行
+     *
+     * @param id       商品 id
+     * @param priceFen 新单价（分），小于 0 表示不变
+     * @param stock    新库存，小于 0 表示不变
+     */
+    public void updatePriceAndStock(String id, long priceFen, int stock) {
+        PushedChange override = overrides.get(id);
+        if (override == null) {
+            override = new PushedChange();
+            overrides.put(id, override);
+        }
+        if (priceFen >= 0) {
+            override.price = Money.format(priceFen);
+        }
+        if (stock >= 0) {
+            override.stock = String.valueOf(stock);
+        }
+        override.sequence = ++updateSequence;
+        int row = findCachedRowIndex(id);
+        if (row >= 0) {
+            applyOverride(cachedRow(row), override);
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    /**
+     * 积累的推送记录是否已经很多（通常是快照数据源）：调用方应下载新的快照并调用 `replaceSource`
+     */
+    public boolean hasManyOverrides() {
+        return overrides.size() > MAX_OVERRIDES;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        // 只有"操作"列可编辑，且该行必须已经加载
+        return column == 5 && cachedRow(row) != null;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Object[] cached = cachedRow(row);
+        if (cached != null) {
+            return cached[column];
+        }
+        int pageIndex = row / PAGE_SIZE;
+        requestPage(pageIndex);
+        // 占位：ID 为空串使数量列显示 0，名称列提示加载中
+        if (column != 1) {
+            return "";
+        }
+        boolean failed = failures.containsKey(pageIndex) && !loading.contains(pageIndex);
+        return failed ? "加载失败，稍后重试" : "加载中...";
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        // "操作"列的值仅用于触发编辑器，不需要保存
+    }
+
+    private Object[] cachedRow(int row) {
+        Object[][] rows = pages.get(row / PAGE_SIZE);
+        int index = row % PAGE_SIZE;
+        if (rows == null || index >= rows.length) {
+            return null;
+        }
+        return rows[index];
+    }
+
+    // 在后台加载指定页，完成后回到 EDT 写入缓存；上次加载失败且未到重试时间时不请求
+    private void requestPage(int pageIndex) {
+        if (pages.containsKey(pageIndex) || loading.contains(pageIndex)) {
+            return;
+        }
+        long[] failure = failures.get(pageIndex);
+        if (failure != null && System.currentTimeMillis() < failure[0]) {
+            return;
+        }
+        loading.add(pageIndex);
+        final int requestGeneration = generation;
+        final String requestCategory = category;
+        final long requestSequence = updateSequence;
+        ServerClient.getInstance().callAsync(() -> source.load(pageIndex * PAGE_SIZE, PAGE_SIZE, requestCategory))
+                .whenCompleteAsync((page, error) -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    loading.remove(pageIndex);
+                    if (error != null) {
+                        error.printStackTrace();
+                        pageFailed(pageIndex, requestGeneration);
+                        return;
+                    }
+                    failures.remove(pageIndex);
+                    applyPage(pageIndex, page, requestSequence);
+                }, ServerClient.EDT);
+    }
+
+    // 记录加载失败并加倍退避时间；到时间后刷新该页的行，仍在视口内时会重新触发加载。
+    // 总行数还未知（切换类别后第一页失败）时没有行可以绘制：显示一行失败提示，到时间后直接重新加载
+    private void pageFailed(int pageIndex, int requestGeneration) {
+        long[] failure = failures.get(pageIndex);
+        long backoff = failure == null ? RETRY_INITIAL_MS : Math.min(failure[1] * 2, RETRY_MAX_MS);
+        failures.put(pageIndex, new long[] { System.currentTimeMillis() + backoff, backoff });
+        boolean noRows = rowCount == 0;
+        if (noRows) {
+            rowCount = 1;
+            fireTableDataChanged();
+        } else {
+            fireRowsOfPage(pageIndex);
+        }
+        Timer retry = new Timer((int) backoff, e -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            if (noRows || pageIndex == 0) {
+                requestPage(pageIndex);
+            }
+            fireRowsOfPage(pageIndex);
+        });
+        retry.setRepeats(false);
+        retry.start();
+    }
+
+    private void fireRowsOfPage(int pageIndex) {
+        int first = pageIndex * PAGE_SIZE;
+        int last = Math.min(first + PAGE_SIZE, rowCount) - 1;
+        if (last >= first) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    // 写入加载好的页：覆盖推送的变化；页请求发出前收到的推送已包含在服务器返回的数据中，记录不再需要
+    private void applyPage(int pageIndex, Page page, long requestSequence) {
+        if (!overrides.isEmpty()) {
+            boolean current = !source.isSnapshot();
+            for (Object[] row : page.getRows()) {
+                PushedChange override = overrides.get(row[0]);
+                if (override == null) {
+                    continue;
+                }
+                if (current && override.sequence <= requestSequence) {
+                    overrides.remove(row[0]);
+                } else {
+                    applyOverride(row, override);
+                }
+            }
+        }
+        pages.put(pageIndex, page.getRows());
+        if (page.getTotal() != rowCount) {
+            // 商品总数发生变化（如切换类别后的第一页），整体刷新
+            rowCount = page.getTotal();
+            fireTableDataChanged();
+            return;
+        }
+        fireRowsOfPage(pageIndex);
+    }
+
+    private static void applyOverride(Object[] row, PushedChange override) {
+        if (override.price != null) {
+            row[3] = override.price;
+        }
+        if (override.stock != null) {
+            row[4] = override.stock;
+        }
+    }
+
+    // 一个商品被推送覆盖的价格与库存文本（为 null 的字段不变），以及最后一次推送的序号
+    private static class PushedChange {
+        String price;
+        String stock;
+        long sequence;
+    }
+}
@@ -0,0 +1,114 @@
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.plaf.FontUIResource;
+
+/**
+ * ScrollBenchmark - 药品表格滚动绘制的性能测试（离屏绘制，可在无显示器环境下运行）
+ *
+ * 用法：java ScrollBenchmark [行数] [帧数]（默认 100000 行、2000 帧）
+ *
+ * 设计说明：
+ * - 使用与购物页面相同的表格模型、行高与"操作"列渲染器，购物车中预先放入部分商品。
+ * - 每帧向下滚动 3 行，把视口范围内的表格绘制到一张离屏图片上，统计每帧耗时
+ *   （平均、中位数、P99、最大值）以及每帧在 EDT 上分配的字节数。
+ * - 分配字节数依赖 HotSpot 的 `com.sun.management.ThreadMXBean`，其他虚拟机上显示为不可用。
+ */
+public class ScrollBenchmark {
+    private static final int VIEW_WIDTH = 1000;
+    private static final int VIEW_HEIGHT = 600;
+    private static final int ROW_HEIGHT = 40;
+    private static final int WARMUP_FRAMES = 500;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        SwingUtilities.invokeAndWait(() -> run(rows, frames));
+    }
+
+    private static void run(int rowCount, int frames) {
+        String[] categories = { "抗生素", "维生素", "感冒药", "心血管" };
+        Object[][] rows = new Object[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = CatalogTableModel.row("M" + i, "测试药品" + i, categories[i % categories.length],
+                    (i % 500) * 100L + i % 100, i % 300);
+            if (i % 7 == 0) {
+                Cart.getInstance().addItem("M" + i, "测试药品" + i, i % 500, 1 + i % 5);
+            }
+        }
+        CatalogTableModel model = new CatalogTableModel(new String[] { "ID", "药品名称", "类别", "价格", "库存", "操作" });
+        model.setRows(rows);
+
+        JTable table = new JTable(model);
+        table.setFont(new FontUIResource("Microsoft YaHei", Font.PLAIN, 14));
+        table.setRowHeight(ROW_HEIGHT);
+        table.getColumnModel().getColumn(5).setCellRenderer(new ShopList.QuantityCellRenderer());
+        table.setSize(VIEW_WIDTH, rowCount * ROW_HEIGHT);
+        table.doLayout();
+
+        BufferedImage image = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        int maxScroll = Math.max(1, rowCount * ROW_HEIGHT - VIEW_HEIGHT);
+        int step = 3 * ROW_HEIGHT;
+
+        int scroll = 0;
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            paintFrame(table, image, scroll);
+            scroll = (scroll + step) % maxScroll;
+        }
+
+        long[] nanos = new long[frames];
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < frames; i++) {
+            long start = System.nanoTime();
+            paintFrame(table, image, scroll);
+            nanos[i] = System.nanoTime() - start;
+            scroll = (scroll + step) % maxScroll;
+        }
+        long allocatedAfter = allocatedBytes();
+
+        Arrays.sort(nanos);
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        System.out.printf("行数 %d，帧数 %d，视口 %dx%d%n", rowCount, frames, VIEW_WIDTH, VIEW_HEIGHT);
+        System.out.printf("每帧耗时(ms)：平均 %.3f，中位数 %.3f，P99 %.3f，最大 %.3f%n",
+                total / 1e6 / frames, nanos[frames / 2] / 1e6, nanos[frames * 99 / 100] / 1e6,
+                nanos[frames - 1] / 1e6);
+        if (allocatedBefore >= 0) {
+            System.out.printf("每帧分配：%d 字节%n", (allocatedAfter - allocatedBefore) / frames);
+        } else {
+            System.out.println("每帧分配：当前虚拟机不支持统计");
+        }
+    }
+
+    // 绘制视口（从 scroll 开始、高 VIEW_HEIGHT 的区域）内的表格
+    private static void paintFrame(JTable table, BufferedImage image, int scroll) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.translate(0, -scroll);
+            g.setClip(0, scroll, VIEW_WIDTH, VIEW_HEIGHT);
+            table.paint(g);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    // 当前线程累计分配的字节数，不支持时返回 -1
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            Method method = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(bean, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+}
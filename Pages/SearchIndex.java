@@ -0,0 +1,227 @@
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SearchIndex - 药品名称/拼音首字母/ID 的即时搜索索引（只读，可在任意线程查询）
+ *
+ * 设计说明：
+ * - 每个商品有三个搜索键：小写名称、名称的拼音首字母（如"阿莫西林" -> "amxl"）、小写 ID。
+ * - 为所有键中的单字与相邻两字（二元组）建立倒排表，倒排表为递增的商品序号数组。
+ * - 查询时取查询串中各二元组的倒排表，从最短的开始求交集，再用 `contains` 校验候选，
+ *   因此耗时只与候选数有关，不需要扫描整个目录。
+ * - 索引在构建后不再修改，目录变化时在后台重新构建一个新索引再替换。
+ */
+public class SearchIndex {
+    private static final int[] EMPTY = new int[0];
+
+    // GB2312 一级汉字按拼音排序，各声母首字的区位码（"i"、"u"、"v" 没有汉字）
+    private static final int[] GB2312_BOUNDARIES = { 0xB0A1, 0xB0C5, 0xB2C1, 0xB4EE, 0xB6EA, 0xB7A2, 0xB8C1,
+            0xB9FE, 0xBBF7, 0xBFA6, 0xC0AC, 0xC2E8, 0xC4C3, 0xC5B6, 0xC5BE, 0xC6DA, 0xC8BB, 0xC8F6, 0xCBFA,
+            0xCDDA, 0xCEF4, 0xD1B9, 0xD4D1 };
+    private static final char[] GB2312_INITIALS = "abcdefghjklmnopqrstwxyz".toCharArray();
+    // 一级汉字的结束位置（之后的二级汉字按部首排序，无法取首字母）
+    private static final int GB2312_LEVEL1_END = 0xD7F9;
+    // CJK 基本汉字区（U+4E00..U+9FA5）每个字的拼音首字母，0 表示无法确定；类加载时按上述码表计算一次
+    private static final char CJK_FIRST = '\u4E00';
+    private static final char CJK_LAST = '\u9FA5';
+    private static final char[] CJK_INITIALS = buildInitialTable();
+
+    private final String[] ids;
+    // 每个商品的搜索键：[序号][0=名称, 1=拼音首字母, 2=ID]
+    private final String[][] keys;
+    // 单字或二元组 -> 包含它的商品序号（递增）
+    private final Map<Integer, int[]> postings;
+
+    private SearchIndex(String[] ids, String[][] keys, Map<Integer, int[]> postings) {
+        this.ids = ids;
+        this.keys = keys;
+        this.postings = postings;
+    }
+
+    /**
+     * 为一批商品建立索引（耗时与商品数成正比，应在后台线程调用）
+     *
+     * @param ids   商品 id
+     * @param names 商品名称，与 ids 一一对应
+     * @param count 商品数
+     * @return 新索引
+     */
+    public static SearchIndex build(String[] ids, String[] names, int count) {
+        String[] docIds = Arrays.copyOf(ids, count);
+        String[][] keys = new String[count][];
+        Map<Integer, IntList> lists = new HashMap<>();
+        for (int doc = 0; doc < count; doc++) {
+            String name = names[doc].toLowerCase();
+            keys[doc] = new String[] { name, pinyinInitials(name), docIds[doc].toLowerCase() };
+            for (String key : keys[doc]) {
+                for (int i = 0; i < key.length(); i++) {
+                    addPosting(lists, gram(key.charAt(i)), doc);
+                    if (i + 1 < key.length()) {
+                        addPosting(lists, gram(key.charAt(i), key.charAt(i + 1)), doc);
+                    }
+                }
+            }
+        }
+        Map<Integer, int[]> postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Integer, IntList> entry : lists.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new SearchIndex(docIds, keys, postings);
+    }
+
+    /**
+     * 查找名称、拼音首字母或 ID 中包含查询串的商品（不区分大小写）
+     *
+     * @param query 查询串
+     * @return 匹配商品的 id（按建索引时的顺序）
+     */
+    public List<String> search(String query) {
+        String q = query.trim().toLowerCase();
+        List<String> result = new ArrayList<>();
+        if (q.isEmpty()) {
+            return result;
+        }
+        if (q.length() == 1) {
+            for (int doc : lookup(gram(q.charAt(0)))) {
+                result.add(ids[doc]);
+            }
+            return result;
+        }
+
+        // 取各二元组的倒排表，从最短的开始求交集
+        int[][] lists = new int[q.length() - 1][];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = lookup(gram(q.charAt(i), q.charAt(i + 1)));
+            if (lists[i].length == 0) {
+                return result;
+            }
+        }
+        Arrays.sort(lists, (a, b) -> a.length - b.length);
+        // 交集结果写回候选数组，复制一份以免改动倒排表
+        int[] candidates = lists[0].clone();
+        int count = candidates.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            count = intersect(candidates, count, lists[i]);
+        }
+
+        // 二元组都出现并不代表连续出现，逐个校验
+        for (int i = 0; i < count; i++) {
+            int doc = candidates[i];
+            for (String key : keys[doc]) {
+                if (key.contains(q)) {
+                    result.add(ids[doc]);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 取字符串中各汉字的拼音首字母，字母与数字原样保留，其余字符忽略。
+     * 只支持 GB2312 一级常用汉字（按拼音排序的部分）。
+     *
+     * @param text 原文
+     * @return 小写拼音首字母串
+     */
+    public static String pinyinInitials(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (Character.isLetterOrDigit(c)) {
+                    sb.append(Character.toLowerCase(c));
+                }
+                continue;
+            }
+            if (c >= CJK_FIRST && c <= CJK_LAST && CJK_INITIALS[c - CJK_FIRST] != 0) {
+                sb.append(CJK_INITIALS[c - CJK_FIRST]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static char[] buildInitialTable() {
+        Charset gb2312 = Charset.forName("GB2312");
+        char[] table = new char[CJK_LAST - CJK_FIRST + 1];
+        for (char c = CJK_FIRST; c <= CJK_LAST; c++) {
+            byte[] bytes = String.valueOf(c).getBytes(gb2312);
+            if (bytes.length != 2) {
+                continue;
+            }
+            int code = (bytes[0] & 0xFF) << 8 | (bytes[1] & 0xFF);
+            if (code < GB2312_BOUNDARIES[0] || code > GB2312_LEVEL1_END) {
+                continue;
+            }
+            int letter = GB2312_BOUNDARIES.length - 1;
+            while (code < GB2312_BOUNDARIES[letter]) {
+                letter--;
+            }
+            table[c - CJK_FIRST] = GB2312_INITIALS[letter];
+        }
+        return table;
+    }
+
+    private int[] lookup(int gram) {
+        int[] list = postings.get(gram);
+        return list != null ? list : EMPTY;
+    }
+
+    // 把 other 与 target 的前 count 项求交集，结果写回 target，返回结果长度（两者均递增）
+    private static int intersect(int[] target, int count, int[] other) {
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < other.length; i++) {
+            int value = target[i];
+            while (j < other.length && other[j] < value) {
+                j++;
+            }
+            if (j < other.length && other[j] == value) {
+                target[n++] = value;
+            }
+        }
+        return n;
+    }
+
+    private static int gram(char c) {
+        return c;
+    }
+
+    // 二元组编码为 int：高 16 位为第一个字符，加 1 以免与单字编码冲突
+    private static int gram(char first, char second) {
+        return (first + 1) << 16 | second;
+    }
+
+    private static void addPosting(Map<Integer, IntList> lists, int gram, int doc) {
+        IntList list = lists.get(gram);
+        if (list == null) {
+            list = new IntList();
+            lists.put(gram, list);
+        }
+        list.addIfLast(doc);
+    }
+
+    // 递增的 int 列表，同一商品重复出现时只保留一次
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addIfLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
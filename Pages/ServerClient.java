@@ -0,0 +1,1119 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.swing.SwingUtilities;
+
+/**
+ * ServerClient - 客户端与服务器之间共享的长连接通道
+ *
+ * 设计说明：
+ * - 使用单例模式（`getInstance()`），全局只保持一条到 `Constant.SERVER_IP:SERVER_PORT` 的 TCP 连接。
+ * - 建立连接后先发送握手（操作码 0），服务器同意后进入多路复用模式。优先声明分块协议 MUX/2：
+ *   请求按块发送，每块为 [int 请求ID][int 操作码][int 块长度][块字节]，
+ *   响应同样按块返回，每块为 [int 请求ID][int 块长度][块字节]；长度为 0 的块表示该请求（响应）结束。
+ *   请求与响应的大小都不受限制，也不需要先在内存中拼出完整内容（见 `BodyWriter` 与 `openStream`）；
+ *   每块单独加锁写出，大请求不会长时间阻塞其他请求。
+ * - 分块模式下建立连接后声明压缩能力（操作码 12，请求为 "deflate"）。服务器接受后，该连接上每个请求与响应的
+ *   内容都以 1 个字节的压缩标志开头：0 为原样，1 为 deflate 压缩。请求内容不超过 COMPRESS_THRESHOLD 字节时
+ *   原样发送，服务器对较大的响应（商品目录、订单历史）同样按阈值决定是否压缩；调用方收到的始终是解压后的内容。
+ * - 服务器只支持 MUX/1 时退回单帧模式：请求帧为 [int 请求ID][int 操作码][UTF 请求内容]，
+ *   响应帧为 [int 请求ID][int 长度][响应字节]，请求内容不能超过 64KB。
+ * - 多个请求可以同时在途，后台读线程按请求ID把响应交给对应的 `CompletableFuture` 或响应流。
+ * - 连接断开时所有在途请求失败，下一次请求会自动重连。
+ * - 若服务器不支持握手（旧版服务器），自动退回"一次请求一个连接"的旧协议，调用方无感知。
+ * - 所有阻塞的网络操作都在后台 I/O 线程上执行（JDK 21 及以上使用虚拟线程），
+ *   异步接口返回 `CompletableFuture`，界面代码通过 `EDT` 执行器把回调切回 Swing 事件分发线程。
+ *   每个请求都有超时，取消 future 即放弃等待该请求的响应。
+ *
+ * 响应内容统一为字节数组，各操作码的格式与旧协议保持一致：
+ * - 1/2/4：1 个字节的布尔值
+ * - 3：UTF-8 编码的商品列表 JSON
+ * - 5：1 个字节的布尔值（是否有订单），其后为 UTF-8 编码的订单 JSON
+ * - 6：分页商品列表，请求为 "偏移量\n数量\n类别"，响应为 {"total":N,"items":[...]} 的 UTF-8 JSON
+ * - 7：商品增量同步，请求为客户端已有的目录版本号，响应为
+ *   {"version":N,"full":false,"upserts":[...],"deletes":["id",...]} 的 UTF-8 JSON（版本 0 返回全量）
+ * - 8：批量保存订单，请求为订单 JSON 数组（每个订单的格式与操作码 4 相同），
+ *   响应为每个订单一个字节的布尔值，顺序与请求一致
+ * - 9：二进制编码的完整商品列表（格式见 `WireCodec`），请求为客户端支持的编码版本号
+ * - 10：二进制编码的批量保存订单，请求为 `WireCodec` 编码的订单列表，响应与操作码 8 相同
+ * - 11：二进制编码的订单历史，请求为 "编码版本号\n用户名"，响应为 `WireCodec` 编码的订单列表
+ * - 12：声明压缩能力，请求为客户端支持的压缩算法（"deflate"），响应为服务器接受的算法（UTF-8 文本，可为空）
+ * - 13：订阅价格与库存变化（见 `subscribe`），请求为客户端已有的目录版本号（0 表示只需此后的变化），
+ *   响应是一个不会结束的 UTF-8 JSON 数组：服务器先立即写出 "["，之后每有变化推送一块
+ *   {"id":"...","price":"12.50","stock":N}（price、stock 可省略其一），先补发该版本之后的变化
+ * - 14：结账，请求为一个订单 JSON（格式与操作码 4 相同，另含下单时的目录版本 "catalogVersion"，
+ *   每个商品另含下单时看到的库存 "stock"，未知为 -1）。服务器在一个事务中核对每个商品的价格与可用库存，
+ *   全部满足时扣减库存并保存订单，否则不做任何修改。响应为 1 个字节的布尔值（是否已保存），未保存时其后为
+ *   UTF-8 JSON 数组，每个冲突的商品一项 {"id":"...","price":"12.50","stock":N}（当前价格与可用库存，
+ *   已下架的商品 stock 为 0）。以订单号为幂等键，与操作码 4/8/10 共用，重复提交不会重复扣减库存
+ * - 15：分页查询订单历史（见 `OrderQuery`），请求为 "用户名\n起始时间\n结束时间\n状态\n游标\n每页数量"
+ *   （时间为毫秒，起始含、结束不含；时间、状态为空表示不限，游标为空表示第一页），按下单时间从新到旧返回
+ *   {"orders":[...],"next":"游标"} 的 UTF-8 JSON，每个订单的格式与操作码 4 相同；next 为空表示没有更早的订单
+ *
+ * 操作码 6 及以后的请求只在多路复用模式下可用，旧版服务器会立即返回失败（`isUnsupported` 为 true），
+ * 由调用方退回旧请求；操作码 9 及以后（二进制编码）只在分块模式下可用。二进制编码的请求失败或响应开头不符时，调用方通过 `binaryUnsupported()`
+ * 记录下来，一段时间内直接使用 JSON（见 `preferBinary()`）。
+ */
+public class ServerClient {
+    // 操作码
+    static final int OP_HELLO = 0;
+    static final int OP_LOGIN = 1;
+    static final int OP_REGISTER = 2;
+    static final int OP_CATALOG = 3;
+    static final int OP_SAVE_ORDER = 4;
+    static final int OP_LOAD_ORDERS = 5;
+    static final int OP_CATALOG_PAGE = 6;
+    static final int OP_CATALOG_DELTA = 7;
+    static final int OP_SAVE_ORDERS = 8;
+    static final int OP_CATALOG_BINARY = 9;
+    static final int OP_SAVE_ORDERS_BINARY = 10;
+    static final int OP_LOAD_ORDERS_BINARY = 11;
+    static final int OP_CAPABILITIES = 12;
+    static final int OP_SUBSCRIBE_STOCK = 13;
+    static final int OP_CHECKOUT = 14;
+    static final int OP_QUERY_ORDERS = 15;
+
+    // 握手时声明的协议版本：分块模式与单帧模式
+    private static final String PROTOCOL_CHUNKED = "MUX/2";
+    private static final String PROTOCOL_HELLO = "MUX/1";
+    // 分块模式下请求每块的最大字节数
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // 允许的最大响应块长度，超过视为协议错误
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    // 响应流最多缓存多少字节尚未读取的数据（缓存为空时总是接收一块，单块可以超过该值）
+    private static final long STREAM_BUFFER_BYTES = 32L * 1024 * 1024;
+    // writeUTF 能写出的最大字节数（单帧模式与旧协议的请求上限）
+    private static final int MAX_UTF_BYTES = 65535;
+    // 协商的压缩算法，以及请求内容超过多少字节时压缩
+    private static final String COMPRESSION = "deflate";
+    private static final int COMPRESS_THRESHOLD = 1024;
+    // 请求与响应内容开头的压缩标志（只在协商了压缩的连接上存在）
+    private static final int FLAG_RAW = 0;
+    private static final int FLAG_DEFLATE = 1;
+    // 连接与握手超时（毫秒）
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    // 同步请求的默认等待时间（毫秒）
+    private static final int REQUEST_TIMEOUT_MS = 15000;
+    // 握手失败后多久再尝试多路复用（毫秒）
+    private static final long LEGACY_RETRY_INTERVAL_MS = 60000;
+
+    /**
+     * 在 Swing 事件分发线程上执行回调，用法如 `future.whenCompleteAsync(..., ServerClient.EDT)`
+     */
+    static final Executor EDT = SwingUtilities::invokeLater;
+
+    /**
+     * 可能抛出 IOException 的后台任务
+     */
+    public interface IoCallable<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * 请求内容：分块模式下写入的数据每满一块就发送，不需要先在内存中拼出完整请求
+     */
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // 单例实例
+    private static final ServerClient instance = new ServerClient();
+
+    // 执行阻塞 I/O 的线程池
+    private final ExecutorService ioExecutor = createIoExecutor();
+    // 请求超时计时器
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "ServerClient-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 请求ID生成器
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    // 写入锁：保证请求帧（分块模式下为每一块）不会交错
+    private final Object writeLock = new Object();
+
+    // 当前连接（为 null 表示尚未连接或已断开）
+    private Connection connection;
+    // 最近一次握手失败的时间，用于决定何时重试多路复用
+    private volatile long legacySince = -1;
+    // 最近一次服务器拒绝分块协议的时间，用于决定何时重试分块模式
+    private volatile long unchunkedSince = -1;
+    // 最近一次压缩协商失败的时间，在此之后一段时间内不再协商
+    private volatile long compressionFailedSince = -1;
+    // 最近一次发现服务器不支持二进制编码的时间
+    private volatile long binaryUnsupportedSince = -1;
+
+    private ServerClient() {
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    // JDK 21 及以上使用虚拟线程，否则使用守护线程的缓存线程池
+    private static ExecutorService createIoExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "ServerClient-io");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * 获取全局唯一的客户端通道
+     *
+     * @return ServerClient 单例实例
+     */
+    public static ServerClient getInstance() {
+        return instance;
+    }
+
+    /**
+     * 异步发送请求（连接、发送都在后台线程进行，不会阻塞调用线程）
+     *
+     * @param opcode  操作码
+     * @param payload 请求内容
+     * @return 完成时携带响应字节的 future；超时以 IOException 失败，可调用 cancel 放弃等待
+     */
+    public CompletableFuture<byte[]> submit(int opcode, String payload) {
+        return submit(opcode, utf8(payload));
+    }
+
+    /**
+     * 异步发送请求，请求内容由 `body` 在后台线程上写出（适合体积较大的请求，如批量上传订单）
+     *
+     * 单帧模式与旧协议下请求内容会先收集到内存中，超过 64KB 时以 IOException 失败。
+     *
+     * @param opcode 操作码
+     * @param body   写出请求内容（UTF-8 编码）
+     * @return 完成时携带响应字节的 future；超时以 IOException 失败，可调用 cancel 放弃等待
+     */
+    public CompletableFuture<byte[]> submit(int opcode, BodyWriter body) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = timer.schedule(
+                () -> future.completeExceptionally(new IOException("等待服务器响应超时")),
+                REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, error) -> timeout.cancel(false));
+        ioExecutor.execute(() -> send(future, opcode, body));
+        return future;
+    }
+
+    /**
+     * 异步发送只返回布尔值的请求（登录、注册、保存订单）
+     */
+    public CompletableFuture<Boolean> submitBoolean(int opcode, String payload) {
+        return submit(opcode, payload).thenApply(body -> body.length > 0 && body[0] != 0);
+    }
+
+    /**
+     * 在后台 I/O 线程上执行任意阻塞任务（如流式下载并解析商品目录）
+     *
+     * @param task 任务
+     * @return 任务结果的 future；取消后任务结果会被丢弃
+     */
+    public <T> CompletableFuture<T> callAsync(IoCallable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 同步发送请求并等待响应（只应在后台线程调用）
+     *
+     * @param opcode  操作码
+     * @param payload 请求内容
+     * @return 响应字节
+     * @throws IOException 连接失败、超时或服务器断开
+     */
+    public byte[] request(int opcode, String payload) throws IOException {
+        return await(submit(opcode, payload));
+    }
+
+    /**
+     * 同步发送只返回布尔值的请求（只应在后台线程调用）
+     */
+    public boolean requestBoolean(int opcode, String payload) throws IOException {
+        return await(submitBoolean(opcode, payload));
+    }
+
+    /**
+     * 判断异步失败是否由用户主动取消引起
+     *
+     * @param error whenComplete 回调中的异常
+     * @return 是否是取消
+     */
+    static boolean isCancellation(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof CancellationException;
+    }
+
+    /**
+     * 判断异步失败是否由服务器不支持该操作码引起（旧版服务器）
+     *
+     * @param error whenComplete 回调中的异常
+     * @return 是否是不支持的操作码
+     */
+    static boolean isUnsupported(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof UnsupportedOpcodeException;
+    }
+
+    /**
+     * 判断异步失败是否由请求内容超过单帧模式或旧协议的大小上限引起（重试同一请求不会成功）
+     *
+     * @param error whenComplete 回调中的异常
+     * @return 是否是请求过大
+     */
+    static boolean isTooLarge(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof RequestTooLargeException;
+    }
+
+    /**
+     * 是否应优先使用二进制编码：服务器不支持时在一段时间内直接使用 JSON
+     */
+    boolean preferBinary() {
+        long since = binaryUnsupportedSince;
+        return since < 0 || System.currentTimeMillis() - since >= LEGACY_RETRY_INTERVAL_MS;
+    }
+
+    /**
+     * 记录服务器不支持二进制编码（调用方退回 JSON 时调用）
+     */
+    void binaryUnsupported() {
+        binaryUnsupportedSince = System.currentTimeMillis();
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("请求已取消");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("请求被中断");
+        }
+    }
+
+    // 在后台线程上建立连接并写出请求
+    private void send(CompletableFuture<byte[]> future, int opcode, BodyWriter body) {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            Connection conn = connect();
+            if (conn != null && !conn.chunked && opcode >= OP_CATALOG_BINARY) {
+                // 单帧模式以 writeUTF 传输请求，只能传输文本
+                throw new UnsupportedOpcodeException(opcode);
+            }
+            if (conn == null) {
+                if (opcode > OP_LOAD_ORDERS) {
+                    throw new UnsupportedOpcodeException(opcode);
+                }
+                // 旧版服务器：一次请求一个连接
+                future.complete(legacyRequest(opcode, toUtf(body)));
+                return;
+            }
+            int requestId = nextRequestId.getAndIncrement();
+            conn.pending.put(requestId, new BufferSink(future, conn.compressed));
+            // 超时或取消后不再等待该响应
+            future.whenComplete((response, error) -> conn.pending.remove(requestId));
+            conn.write(requestId, opcode, body);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 发送请求并以输入流形式读取响应，适合体积较大的响应（如商品列表）
+     *
+     * 分块模式下每收到一块就可以读取，解析器可以边接收边解码，整个响应不会同时留在内存中；
+     * 每次读取最多等待 REQUEST_TIMEOUT_MS，提前关闭流即放弃剩余的响应。
+     * 旧协议下直接返回套接字的输入流；关闭该流即关闭连接。单帧模式下响应先完整接收再返回。
+     *
+     * @param opcode  操作码
+     * @param payload 请求内容
+     * @return 响应内容的输入流，调用方负责关闭
+     * @throws IOException 连接失败、超时或服务器断开
+     */
+    public InputStream openStream(int opcode, String payload) throws IOException {
+        Connection conn = connect();
+        if (conn == null && opcode == OP_CATALOG) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(Constant.SERVER_IP, Constant.SERVER_PORT), CONNECT_TIMEOUT_MS);
+                socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+                DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
+                dos.writeInt(opcode);
+                dos.writeUTF(payload);
+                dos.flush();
+                return socket.getInputStream();
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+        if (conn == null || !conn.chunked) {
+            return new ByteArrayInputStream(request(opcode, payload));
+        }
+        return openChunkedStream(conn, opcode, payload, REQUEST_TIMEOUT_MS);
+    }
+
+    /**
+     * 订阅服务器推送（如价格与库存变化）：响应是一个不会结束的流，服务器有新消息时推送一块
+     *
+     * 读取没有超时；关闭流即取消订阅，之后收到的推送被丢弃。连接断开时读取以 IOException 失败，
+     * 调用方应稍后重新订阅。只在分块模式下可用，否则以 `isUnsupported` 为 true 的 IOException 失败。
+     *
+     * @param opcode  操作码
+     * @param payload 请求内容
+     * @return 推送内容的输入流，调用方负责关闭
+     * @throws IOException 连接失败或不支持订阅
+     */
+    public InputStream subscribe(int opcode, String payload) throws IOException {
+        Connection conn = connect();
+        if (conn == null || !conn.chunked) {
+            throw new UnsupportedOpcodeException(opcode);
+        }
+        return openChunkedStream(conn, opcode, payload, 0);
+    }
+
+    // 分块模式：发送请求并返回边接收边读取的响应流；readTimeoutMs 为 0 表示读取不超时
+    private InputStream openChunkedStream(Connection conn, int opcode, String payload, long readTimeoutMs)
+            throws IOException {
+        int requestId = nextRequestId.getAndIncrement();
+        StreamSink sink = new StreamSink(conn, requestId, readTimeoutMs);
+        conn.pending.put(requestId, sink);
+        try {
+            conn.write(requestId, opcode, utf8(payload));
+            return conn.compressed ? decodeStream(sink) : sink;
+        } catch (IOException e) {
+            sink.close();
+            throw e;
+        }
+    }
+
+    // 读取响应开头的压缩标志，返回解压后的响应流（会等待响应的第一块到达）
+    private static InputStream decodeStream(InputStream in) throws IOException {
+        int flag = in.read();
+        if (flag == -1 || flag == FLAG_RAW) {
+            return in;
+        }
+        if (flag != FLAG_DEFLATE) {
+            throw new IOException("未知的压缩标志：" + flag);
+        }
+        return new InflaterInputStream(in, new Inflater(), 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    }
+
+    // 去掉压缩标志并在需要时解压整个响应
+    private static byte[] decode(byte[] data) throws IOException {
+        if (data.length == 0) {
+            return data;
+        }
+        if (data[0] == FLAG_RAW) {
+            return Arrays.copyOfRange(data, 1, data.length);
+        }
+        if (data[0] != FLAG_DEFLATE) {
+            throw new IOException("未知的压缩标志：" + data[0]);
+        }
+        Inflater inflater = new Inflater();
+        try (InputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(data, 1, data.length - 1), inflater, 8192)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            copy(in, out);
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // 以 UTF-8 编码写出字符串的请求内容（OutputStreamWriter 按小块编码，不会一次生成完整的字节数组）
+    private static BodyWriter utf8(String payload) {
+        return out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(payload);
+            writer.flush();
+        };
+    }
+
+    // 单帧模式与旧协议：把请求内容收集为字符串，超过 writeUTF 的上限时失败
+    private static String toUtf(BodyWriter body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        body.writeTo(buffer);
+        if (buffer.size() > MAX_UTF_BYTES) {
+            throw new RequestTooLargeException(buffer.size());
+        }
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // 获取（必要时建立）多路复用连接；返回 null 表示应使用旧协议
+    private Connection connect() throws IOException {
+        synchronized (this) {
+            if (connection != null && !connection.closed) {
+                return connection;
+            }
+            if (legacySince >= 0 && System.currentTimeMillis() - legacySince < LEGACY_RETRY_INTERVAL_MS) {
+                return null;
+            }
+
+            // 先尝试分块协议，服务器明确拒绝后再尝试单帧协议
+            long now = System.currentTimeMillis();
+            boolean tryChunked = unchunkedSince < 0 || now - unchunkedSince >= LEGACY_RETRY_INTERVAL_MS;
+            String[] versions = tryChunked
+                    ? new String[] { PROTOCOL_CHUNKED, PROTOCOL_HELLO } : new String[] { PROTOCOL_HELLO };
+            for (String version : versions) {
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(Constant.SERVER_IP, Constant.SERVER_PORT), CONNECT_TIMEOUT_MS);
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+                boolean accepted;
+                try {
+                    socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+                    out.writeInt(OP_HELLO);
+                    out.writeUTF(version);
+                    out.flush();
+                    accepted = in.readBoolean();
+                    socket.setSoTimeout(0);
+                } catch (IOException e) {
+                    // 旧版服务器不认识握手，会直接断开或不作回应，不必再尝试其他版本
+                    socket.close();
+                    break;
+                }
+                if (!accepted) {
+                    socket.close();
+                    if (version == PROTOCOL_CHUNKED) {
+                        unchunkedSince = now;
+                    }
+                    continue;
+                }
+
+                legacySince = -1;
+                if (version == PROTOCOL_CHUNKED) {
+                    unchunkedSince = -1;
+                }
+                Connection conn = new Connection(socket, in, out, version == PROTOCOL_CHUNKED);
+                connection = conn;
+                Thread reader = new Thread(conn::readLoop, "ServerClient-reader");
+                reader.setDaemon(true);
+                reader.start();
+                if (conn.chunked && (compressionFailedSince < 0
+                        || now - compressionFailedSince >= LEGACY_RETRY_INTERVAL_MS)) {
+                    negotiateCompression(conn);
+                    if (conn.closed) {
+                        // 服务器因不认识的操作码断开了连接：暂不再协商，重新连接
+                        compressionFailedSince = now;
+                        return connect();
+                    }
+                }
+                return conn;
+            }
+            legacySince = now;
+            return null;
+        }
+    }
+
+    // 声明压缩能力并等待服务器回答（持有连接锁，其他请求在协商完成后才能使用该连接）
+    private void negotiateCompression(Connection conn) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        int requestId = nextRequestId.getAndIncrement();
+        conn.pending.put(requestId, new BufferSink(future, false));
+        try {
+            conn.write(requestId, OP_CAPABILITIES, utf8(COMPRESSION));
+            byte[] answer = future.get(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            for (String name : new String(answer, StandardCharsets.UTF_8).split("[\\s,]+")) {
+                if (COMPRESSION.equals(name)) {
+                    conn.compressed = true;
+                }
+            }
+            compressionFailedSince = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            compressionFailedSince = System.currentTimeMillis();
+        } finally {
+            conn.pending.remove(requestId);
+        }
+    }
+
+    // 旧协议：建立连接、发送一次请求、按操作码读取响应后关闭
+    private byte[] legacyRequest(int opcode, String payload) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(Constant.SERVER_IP, Constant.SERVER_PORT), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+            DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
+            dos.writeInt(opcode);
+            dos.writeUTF(payload);
+            dos.flush();
+
+            DataInputStream dis = new DataInputStream(socket.getInputStream());
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            switch (opcode) {
+                case OP_CATALOG:
+                    copy(dis, body);
+                    break;
+                case OP_LOAD_ORDERS:
+                    boolean exists = dis.readBoolean();
+                    body.write(exists ? 1 : 0);
+                    if (exists) {
+                        // 跳过布尔值之后的换行符
+                        dis.readByte();
+                        copy(dis, body);
+                    }
+                    break;
+                default:
+                    body.write(dis.readBoolean() ? 1 : 0);
+                    break;
+            }
+            return body.toByteArray();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * 一条多路复用连接及其读线程
+     */
+    private class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        // 是否为分块模式（MUX/2）
+        private final boolean chunked;
+        // 是否已协商压缩（此后请求与响应内容都带压缩标志）
+        private volatile boolean compressed;
+        // 在途请求：请求ID -> 接收响应的 future 或响应流
+        private final Map<Integer, ResponseSink> pending = new ConcurrentHashMap<>();
+        private volatile boolean closed;
+
+        Connection(Socket socket, DataInputStream in, DataOutputStream out, boolean chunked) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+            this.chunked = chunked;
+        }
+
+        // 写出一个请求：单帧模式下整帧写出，分块模式下边生成边按块写出
+        void write(int requestId, int opcode, BodyWriter body) throws IOException {
+            if (!chunked) {
+                String payload = toUtf(body);
+                try {
+                    synchronized (writeLock) {
+                        out.writeInt(requestId);
+                        out.writeInt(opcode);
+                        out.writeUTF(payload);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    close(e);
+                    throw e;
+                }
+                return;
+            }
+            ChunkedRequestStream stream = new ChunkedRequestStream(this, requestId, opcode);
+            CompressingStream compressing = compressed ? new CompressingStream(stream) : null;
+            try {
+                if (compressing != null) {
+                    body.writeTo(compressing);
+                    compressing.finish();
+                } else {
+                    body.writeTo(stream);
+                }
+                stream.finish();
+            } catch (IOException e) {
+                // 请求已经发出一部分时无法撤回，只能断开连接
+                if (stream.started) {
+                    close(e);
+                }
+                throw e;
+            } finally {
+                if (compressing != null) {
+                    compressing.end();
+                }
+            }
+        }
+
+        // 写出一块（加锁，只在分块模式下调用）；length 为 0 表示请求结束
+        void writeChunk(int requestId, int opcode, byte[] data, int length, boolean last) throws IOException {
+            try {
+                synchronized (writeLock) {
+                    out.writeInt(requestId);
+                    out.writeInt(opcode);
+                    out.writeInt(length);
+                    out.write(data, 0, length);
+                    if (last && length > 0) {
+                        // 最后一块与结束标记一起写出
+                        out.writeInt(requestId);
+                        out.writeInt(opcode);
+                        out.writeInt(0);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close(e);
+                throw e;
+            }
+        }
+
+        // 读线程：不断读取响应帧（块）并按请求ID分发
+        void readLoop() {
+            try {
+                while (!closed) {
+                    int requestId = in.readInt();
+                    int length = in.readInt();
+                    if (length < 0 || (chunked && length > MAX_CHUNK_SIZE)) {
+                        throw new IOException("响应帧长度无效：" + length);
+                    }
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    if (!chunked) {
+                        ResponseSink sink = pending.remove(requestId);
+                        if (sink != null) {
+                            sink.chunk(data);
+                            sink.end();
+                        }
+                    } else if (length == 0) {
+                        ResponseSink sink = pending.remove(requestId);
+                        if (sink != null) {
+                            sink.end();
+                        }
+                    } else {
+                        ResponseSink sink = pending.get(requestId);
+                        if (sink != null) {
+                            sink.chunk(data);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        // 关闭连接，并让所有在途请求失败（下次请求会重新连接）
+        void close(IOException cause) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            for (Integer requestId : pending.keySet()) {
+                ResponseSink sink = pending.remove(requestId);
+                if (sink != null) {
+                    sink.fail(cause);
+                }
+            }
+            // 最后才获取客户端锁：建立连接（如压缩协商）期间持有该锁，不应因此延迟在途请求的失败
+            synchronized (ServerClient.this) {
+                if (connection == this) {
+                    connection = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 分块模式下请求内容的输出流：写入的数据每满 CHUNK_SIZE 字节发送一块，finish() 发送剩余数据与结束标记
+     */
+    private static class ChunkedRequestStream extends OutputStream {
+        private final Connection conn;
+        private final int requestId;
+        private final int opcode;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        // 是否已经发出过数据块
+        private boolean started;
+
+        ChunkedRequestStream(Connection conn, int requestId, int opcode) {
+            this.conn = conn;
+            this.requestId = requestId;
+            this.opcode = opcode;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                sendChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    sendChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        void finish() throws IOException {
+            conn.writeChunk(requestId, opcode, buffer, count, true);
+            count = 0;
+        }
+
+        private void sendChunk() throws IOException {
+            started = true;
+            conn.writeChunk(requestId, opcode, buffer, count, false);
+            count = 0;
+        }
+    }
+
+    /**
+     * 压缩请求内容：先缓存最多 COMPRESS_THRESHOLD 字节，内容较小时原样发送（标志 0），
+     * 超过阈值后改为边写边 deflate 压缩（标志 1）
+     */
+    private static class CompressingStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] pending = new byte[COMPRESS_THRESHOLD];
+        private int count;
+        private Deflater deflater;
+        private DeflaterOutputStream deflating;
+
+        CompressingStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (deflating == null && count < pending.length) {
+                pending[count++] = (byte) b;
+                return;
+            }
+            startDeflating();
+            deflating.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (deflating == null && count + len <= pending.length) {
+                System.arraycopy(b, off, pending, count, len);
+                count += len;
+                return;
+            }
+            startDeflating();
+            deflating.write(b, off, len);
+        }
+
+        // 写出剩余内容（不关闭下层流）
+        void finish() throws IOException {
+            if (deflating != null) {
+                deflating.finish();
+            } else {
+                out.write(FLAG_RAW);
+                out.write(pending, 0, count);
+            }
+        }
+
+        // 释放压缩器的本地内存
+        void end() {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+
+        private void startDeflating() throws IOException {
+            if (deflating != null) {
+                return;
+            }
+            out.write(FLAG_DEFLATE);
+            deflater = new Deflater();
+            deflating = new DeflaterOutputStream(out, deflater, 8192);
+            deflating.write(pending, 0, count);
+        }
+    }
+
+    /**
+     * 接收一个请求的响应（由读线程调用）：单帧模式下为一块数据加结束，分块模式下为若干块加结束
+     */
+    private interface ResponseSink {
+        void chunk(byte[] data);
+
+        void end();
+
+        void fail(IOException cause);
+    }
+
+    /**
+     * 把响应的各块拼接为字节数组，完成对应的 future（压缩的响应在 I/O 线程上解压，不占用读线程）
+     */
+    private class BufferSink implements ResponseSink {
+        private final CompletableFuture<byte[]> future;
+        // 响应是否带压缩标志
+        private final boolean encoded;
+        private byte[] first;
+        private ByteArrayOutputStream rest;
+
+        BufferSink(CompletableFuture<byte[]> future, boolean encoded) {
+            this.future = future;
+            this.encoded = encoded;
+        }
+
+        @Override
+        public void chunk(byte[] data) {
+            if (first == null) {
+                // 只有一块时直接使用，不再复制
+                first = data;
+                return;
+            }
+            if (rest == null) {
+                rest = new ByteArrayOutputStream(first.length * 2);
+                rest.write(first, 0, first.length);
+            }
+            rest.write(data, 0, data.length);
+        }
+
+        @Override
+        public void end() {
+            byte[] data = rest != null ? rest.toByteArray() : first != null ? first : new byte[0];
+            if (!encoded) {
+                future.complete(data);
+            } else if (data.length > 0 && data[0] == FLAG_DEFLATE) {
+                ioExecutor.execute(() -> completeDecoded(data));
+            } else {
+                completeDecoded(data);
+            }
+        }
+
+        private void completeDecoded(byte[] data) {
+            try {
+                future.complete(decode(data));
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void fail(IOException cause) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    // 响应流队列中表示结束（或失败）的标记
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    /**
+     * 以输入流形式读取分块响应：读线程放入收到的块，调用方边读边取出
+     *
+     * 读线程从不等待读取方：收到的块直接放入队列，同一连接上的其他响应不受读得慢的调用方影响。
+     * 尚未读取的数据超过 STREAM_BUFFER_BYTES 时放弃该响应（协议没有流量控制，无法让服务器暂停发送），
+     * 之后收到的块被丢弃，读完已缓存的数据后以 IOException 失败。
+     */
+    private static class StreamSink extends InputStream implements ResponseSink {
+        private final Connection conn;
+        private final int requestId;
+        // 每次读取最多等待的时间，0 表示不超时
+        private final long readTimeoutMs;
+        private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        // 已缓存、尚未读取的字节数
+        private final AtomicLong buffered = new AtomicLong();
+        private volatile IOException failure;
+        private volatile boolean closed;
+        // 以下字段只在读取方线程上访问
+        private byte[] current = END_OF_STREAM;
+        private int position;
+        private boolean finished;
+
+        StreamSink(Connection conn, int requestId, long readTimeoutMs) {
+            this.conn = conn;
+            this.requestId = requestId;
+            this.readTimeoutMs = readTimeoutMs;
+        }
+
+        @Override
+        public void chunk(byte[] data) {
+            if (closed) {
+                return;
+            }
+            long total = buffered.addAndGet(data.length);
+            if (total > STREAM_BUFFER_BYTES && total > data.length) {
+                // 调用方读得太慢：不再接收该响应，而不是让读线程等待
+                conn.pending.remove(requestId);
+                fail(new IOException("响应数据读取过慢，已放弃"));
+                return;
+            }
+            chunks.add(data);
+        }
+
+        @Override
+        public void end() {
+            chunks.add(END_OF_STREAM);
+        }
+
+        @Override
+        public void fail(IOException cause) {
+            failure = cause;
+            chunks.add(END_OF_STREAM);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? current[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current.length - position;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // 不再接收该响应，并唤醒可能正在等待的读取方
+            conn.pending.remove(requestId);
+            chunks.clear();
+            chunks.add(END_OF_STREAM);
+        }
+
+        // 确保当前块还有未读数据；响应结束时返回 false
+        private boolean fill() throws IOException {
+            while (position == current.length) {
+                if (finished) {
+                    return false;
+                }
+                if (closed) {
+                    throw new IOException("响应流已关闭");
+                }
+                byte[] next;
+                try {
+                    next = readTimeoutMs > 0 ? chunks.poll(readTimeoutMs, TimeUnit.MILLISECONDS) : chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("读取响应被中断");
+                }
+                if (next == null) {
+                    close();
+                    throw new IOException("等待服务器响应超时");
+                }
+                if (next == END_OF_STREAM) {
+                    finished = true;
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return false;
+                }
+                buffered.addAndGet(-next.length);
+                current = next;
+                position = 0;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 服务器不支持请求的操作码
+     */
+    private static class UnsupportedOpcodeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedOpcodeException(int opcode) {
+            super("服务器不支持操作码 " + opcode);
+        }
+    }
+
+    /**
+     * 请求内容超过单帧模式或旧协议能传输的大小
+     */
+    private static class RequestTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RequestTooLargeException(int size) {
+            super("请求内容为 " + size + " 字节，超过服务器支持的 64KB 上限");
+        }
+    }
+}
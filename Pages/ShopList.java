@@ -1,5 +1,7 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.plaf.ColorUIResource;
@@ -10,109 +12,636 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.net.*;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.io.*;
 
 public class ShopList {
-    private DefaultTableModel tableModel;
+    // 内存中的按列存储目录（商品较少时使用）
+    private CatalogTableModel catalogModel;
     private JTable table; // 表格对象，改为成员变量以便在其他方法中访问
-    // 原始数据
-    private Object[][] medicineData;
-    private Object[][] ordersData;
-    private DefaultTableModel ordersTableModel;
+    // "操作"列的数量编辑器（购物车在编辑期间被其他途径修改时刷新显示）
+    private QuantityCellEditor quantityEditor;
+    // 分页模式下的表格模型（商品较少时为 null，直接使用内存中的 catalogModel）
+    private PagedCatalogModel pagedModel;
+    // 已同步的商品目录版本（0 表示尚未通过增量接口同步；订阅线程也会读取）
+    private volatile long catalogVersion;
+    // 服务器推送的价格与库存变化：订阅线程放入，EDT 批量取出应用；以及是否已安排取出
+    private final ConcurrentLinkedQueue<StockUpdate> stockUpdates = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean stockUpdatesScheduled = new AtomicBoolean();
+    // 接收推送的订阅线程（为 null 表示尚未启动），以及当前订阅的推送流
+    private Thread stockSubscription;
+    private volatile InputStream stockStream;
+    // 窗口已关闭（`dispose`）：订阅线程退出，不再注册监听
+    private volatile boolean disposed;
+    // 注册到购物车和发件箱的监听器，窗口关闭时移除
+    private final Cart.CartListener cartListener = this::onCartChanged;
+    private final Runnable outboxListener = () -> SwingUtilities.invokeLater(this::updateOutboxLabel);
+    // 因推送记录过多而重新下载快照的最早时间（下载失败时不立即重试）
+    private long overrideResyncTime;
+    // 当前选择的类别
+    private String currentCategory = "全部";
+    // 类别下拉列表（内容随目录数据变化），以及正在由程序刷新列表内容的标记
+    private JComboBox<String> categoryBox;
+    private boolean updatingCategories;
+    // 类别列表对应的目录数据版本
+    private long categoriesVersion = -1;
+    // 价格区间与仅显示有货的过滤条件输入控件
+    private JTextField minPriceField;
+    private JTextField maxPriceField;
+    private JCheckBox inStockOnlyBox;
+    // 搜索框、输入防抖定时器，以及在后台建立的搜索索引和它对应的目录数据版本
+    private JTextField searchField;
+    private Timer searchTimer;
+    private SearchIndex searchIndex;
+    private long searchIndexVersion = -1;
+    // 每次发起搜索递增，丢弃过期的搜索结果
+    private int searchSequence;
+    // 已创建的购物面板，再次进入时复用并增量刷新
+    private JPanel shopPanel;
+    // 初始目录是否已加载成功
+    private boolean catalogLoaded;
+    // 当前进行中的目录加载/同步任务（为 null 表示空闲）
+    private CompletableFuture<?> catalogTask;
     private final String[] columnNames = { "ID", "药品名称", "类别", "价格", "库存", "操作" };
-    private final String[] orderColumnNames = { "订单ID", "药品", "下单时间", "状态" };
 
     // 顶部显示总价的标签（在 createTopPanel 中初始化）
     private JLabel totalPriceLabel;
+    // 标签上当前显示的总价（分），总价不变时跳过更新
+    private long shownTotalFen;
+    // 顶部显示加载/同步进度的标签与取消按钮（在 createTopPanel 中初始化）
+    private JLabel catalogStatusLabel;
+    private JButton cancelLoadButton;
+    // 顶部显示待上传订单数与最早一笔等待时间的标签，以及刷新等待时间的定时器
+    private JLabel outboxLabel;
+    private Timer outboxTimer;
+    // 结账请求在途（等待服务器核对库存），期间不能再次下单
+    private boolean checkoutInProgress;
     
     // 当前用户名（默认为test）
     private String currentUser = "test";
 
-    // 从JSON文件加载数据
-    private void loadData() {
-        List<Object[]> dataList = new ArrayList<>();
+    // 商品 JSON 中各字段名，顺序与表格的列一致
+    private static final String[] MEDICINE_FIELDS = { "id", "name", "category", "price", "stock" };
+    // 分页响应中的字段名
+    private static final String[] PAGE_FIELDS = { "total", "items" };
+    // 增量同步响应中的字段名
+    private static final String[] DELTA_FIELDS = { "version", "full", "upserts", "deletes" };
+    // 推送的价格与库存变化中的字段名
+    private static final String[] STOCK_UPDATE_FIELDS = { "id", "price", "stock" };
+    // 订阅断开后重新订阅的等待时间下限与上限（毫秒）
+    private static final long SUBSCRIBE_INITIAL_BACKOFF_MS = 1000;
+    private static final long SUBSCRIBE_MAX_BACKOFF_MS = 60000;
+    // 商品总数超过该值时使用分页表格模型，不再整体下载
+    private static final int CATALOG_IN_MEMORY_LIMIT = 5000;
+
+    // 后台线程：加载初始商品数据，优先使用本地快照，否则从服务器获取（流式解析，边接收边解码）
+    private InitialCatalog loadInitialCatalog() throws IOException {
+        InitialCatalog initial = new InitialCatalog();
+        // 本地有快照时立即显示，最新数据在后台获取后再替换
+        CatalogSnapshot snapshot = CatalogSnapshot.openLatest(CatalogSnapshot.defaultDirectory());
+        if (snapshot != null) {
+            // 上次运行时仍被映射而没能删除的旧快照，现在可以删除了
+            snapshot.deleteOthers();
+            if (snapshot.getRowCount() > CATALOG_IN_MEMORY_LIMIT) {
+                // 行数多时直接从映射文件分页
+                initial.pageSource = snapshot;
+                initial.firstPage = snapshot.load(0, PagedCatalogModel.PAGE_SIZE, "全部");
+            } else {
+                List<Object[]> rows = new ArrayList<>(snapshot.getRowCount());
+                snapshot.readAll(collectRows(rows));
+                initial.rows = rows.toArray(new Object[0][]);
+            }
+            initial.version = snapshot.getVersion();
+            initial.needsSync = true;
+            return initial;
+        }
+
+        // 先请求第一页：商品很多时只需这一页即可绘制，其余页随滚动按需加载
         try {
-            // 连接到服务端获取数据 (假设服务端运行在本地 8888 端口)
-            Socket socket = new Socket(Constant.SERVER_IP, Constant.SERVER_PORT);
-
-            // 发送int类型的请求选项id和String类型的请求信息message
-            DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-            dos.writeInt(3);
-            dos.writeUTF("获取商品列表");
-            dos.flush();
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
-            // stringbuilder 用于拼接多行数据
-            StringBuilder sb = new StringBuilder();
-            String line;
-            // 设置UTF-8 编码读取数据
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-            socket.close();
-
-            String content = sb.toString();
-            content = content.trim();
-
-            // 简单的JSON解析逻辑
-            if (content.startsWith("[") && content.endsWith("]")) {
-                content = content.substring(1, content.length() - 1);
-            }
-
-            // 分割对象
-            String[] objects = content.split("(?<=\\}),\\s*");
-
-            for (String obj : objects) {
-                // trim表示去掉前后空格
-                obj = obj.trim();
-                if (obj.startsWith("{"))
-                    obj = obj.substring(1);
-                if (obj.endsWith("}"))
-                    obj = obj.substring(0, obj.length() - 1);
-
-                String[] pairs = obj.split(",");
-                String id = "", name = "", category = "", price = "", stock = "";
-
-                for (String pair : pairs) {
-                    String[] kv = pair.split(":");
-                    if (kv.length == 2) {
-                        String key = kv[0].trim().replace("\"", "");
-                        String value = kv[1].trim().replace("\"", "");
-
-                        switch (key) {
-                            case "id":
-                                id = value;
-                                break;
-                            case "name":
-                                name = value;
-                                break;
-                            case "category":
-                                category = value;
-                                break;
-                            case "price":
-                                price = value;
-                                break;
-                            case "stock":
-                                stock = value;
-                                break;
+            PagedCatalogModel.Page firstPage = loadCatalogPage(0, PagedCatalogModel.PAGE_SIZE, "全部");
+            if (firstPage.getTotal() > CATALOG_IN_MEMORY_LIMIT) {
+                initial.pageSource = this::loadCatalogPage;
+                initial.firstPage = firstPage;
+                // 后台下载完整快照，完成后改为从快照分页
+                initial.needsSync = true;
+                return initial;
+            }
+        } catch (IOException e) {
+            // 服务器不支持分页请求，退回整体下载
+        }
+
+        CatalogDelta delta = fetchCatalog(0);
+        initial.rows = delta.upserts.toArray(new Object[0][]);
+        initial.version = delta.version;
+        initial.needsSave = true;
+        return initial;
+    }
+
+    // 在后台加载初始商品数据，完成后回到 EDT 安装到表格
+    private void loadCatalogAsync() {
+        CompletableFuture<InitialCatalog> task = ServerClient.getInstance().callAsync(this::loadInitialCatalog);
+        trackCatalogTask(task, "正在加载药品列表...", "药品列表加载失败，请检查网络后重新进入");
+        task.thenAcceptAsync(this::installCatalog, ServerClient.EDT);
+    }
+
+    // EDT：安装初始目录并刷新表格
+    private void installCatalog(InitialCatalog initial) {
+        catalogLoaded = true;
+        catalogVersion = initial.version;
+        if (initial.pageSource != null) {
+            pagedModel = new PagedCatalogModel(columnNames, initial.pageSource, initial.firstPage);
+            table.setModel(pagedModel);
+            configureColumns();
+            // 分页接口只支持按类别过滤
+            searchField.setEnabled(false);
+            minPriceField.setEnabled(false);
+            maxPriceField.setEnabled(false);
+            inStockOnlyBox.setEnabled(false);
+            if (!"全部".equals(currentCategory)) {
+                pagedModel.setCategory(currentCategory);
+            }
+        } else {
+            catalogModel.setRows(initial.rows);
+        }
+        if (initial.needsSync) {
+            syncInBackground();
+        }
+        if (initial.needsSave) {
+            saveSnapshotInBackground();
+        }
+        startStockSubscription();
+    }
+
+    // 启动订阅线程：此后价格与库存的变化由服务器推送，不需要轮询或重新下载目录
+    private void startStockSubscription() {
+        if (stockSubscription != null || disposed) {
+            return;
+        }
+        stockSubscription = new Thread(this::runStockSubscription, "stock-subscription");
+        stockSubscription.setDaemon(true);
+        stockSubscription.start();
+    }
+
+    // 订阅线程：接收推送的变化并交给 EDT；断开或推送内容出错后按指数退避重新订阅（从当前目录版本补发遗漏的变化），
+    // 直到 `dispose` 停止订阅
+    private void runStockSubscription() {
+        long backoff = SUBSCRIBE_INITIAL_BACKOFF_MS;
+        while (!disposed) {
+            InputStream in = null;
+            try {
+                in = ServerClient.getInstance().subscribe(ServerClient.OP_SUBSCRIBE_STOCK,
+                        String.valueOf(catalogVersion));
+                stockStream = in;
+                if (disposed) {
+                    // dispose 发生在订阅建立期间，没能关闭这个流
+                    return;
+                }
+                JsonReader reader = new JsonReader(in);
+                reader.beginArray();
+                backoff = SUBSCRIBE_INITIAL_BACKOFF_MS;
+                while (reader.hasNext()) {
+                    StockUpdate update = readStockUpdate(reader);
+                    if (update != null) {
+                        stockUpdates.add(update);
+                        if (stockUpdatesScheduled.compareAndSet(false, true)) {
+                            SwingUtilities.invokeLater(this::applyStockUpdates);
                         }
                     }
                 }
-                // 只有当解析出有效数据时才添加
-                if (!id.isEmpty()) {
-                    dataList.add(new Object[] { id, name, category, price, stock, "操作" });
+                reader.endArray();
+            } catch (IOException e) {
+                if (ServerClient.isUnsupported(e)) {
+                    // 当前服务器不支持订阅，过一段时间再试
+                    backoff = SUBSCRIBE_MAX_BACKOFF_MS;
+                }
+            } catch (RuntimeException e) {
+                // 推送内容不合预期等意外错误：记录后同样退避重试，不让订阅线程就此结束
+                e.printStackTrace();
+            } finally {
+                stockStream = null;
+                closeQuietly(in);
+            }
+            if (disposed) {
+                return;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, SUBSCRIBE_MAX_BACKOFF_MS);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // 流已断开，忽略
+        }
+    }
+
+    // 解析一条推送：{"id":"...","price":"12.50","stock":N}，缺少的字段表示不变
+    private static StockUpdate readStockUpdate(JsonReader reader) throws IOException {
+        String id = null;
+        long priceFen = -1;
+        int stock = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextNameIndex(STOCK_UPDATE_FIELDS)) {
+                case 0:
+                    id = reader.nextString();
+                    break;
+                case 1:
+                    priceFen = Money.parse(reader.nextString(), -1);
+                    break;
+                case 2:
+                    stock = (int) Math.max(-1, Math.min(Integer.MAX_VALUE, reader.nextLong(-1)));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return id != null ? new StockUpdate(id, priceFen, stock) : null;
+    }
+
+    // EDT：应用积累的推送，每个受影响的行单独刷新
+    private void applyStockUpdates() {
+        stockUpdatesScheduled.set(false);
+        StockUpdate update;
+        while ((update = stockUpdates.poll()) != null) {
+            applyStockUpdate(update);
+        }
+        // 快照上积累的推送很多时重新下载快照，替换后推送记录随之清空
+        if (pagedModel != null && pagedModel.hasManyOverrides() && catalogTask == null
+                && System.currentTimeMillis() >= overrideResyncTime) {
+            overrideResyncTime = System.currentTimeMillis() + SUBSCRIBE_MAX_BACKOFF_MS;
+            syncInBackground();
+        }
+    }
+
+    // EDT：按服务器给出的价格与库存刷新一行
+    private void applyStockUpdate(StockUpdate update) {
+        if (pagedModel != null) {
+            pagedModel.updatePriceAndStock(update.id, update.priceFen, update.stock);
+        } else {
+            catalogModel.updatePriceAndStock(update.id, update.priceFen, update.stock);
+        }
+    }
+
+    // 获取指定版本之后的目录变化；服务器不支持增量同步时退回整体下载（视为全量）
+    private CatalogDelta fetchCatalog(long sinceVersion) throws IOException {
+        // 需要完整目录时优先使用二进制编码
+        CatalogDelta binary = sinceVersion == 0 ? loadBinaryCatalog() : null;
+        if (binary != null) {
+            return binary;
+        }
+        try {
+            return loadCatalogDelta(sinceVersion);
+        } catch (IOException e) {
+            // 服务器不支持增量同步，退回整体下载
+        }
+        binary = sinceVersion != 0 ? loadBinaryCatalog() : null;
+        if (binary != null) {
+            return binary;
+        }
+        CatalogDelta delta = new CatalogDelta();
+        delta.full = true;
+        try (JsonReader reader = new JsonReader(
+                ServerClient.getInstance().openStream(ServerClient.OP_CATALOG, "获取商品列表"))) {
+            readMedicineRows(reader, collectRows(delta.upserts));
+        }
+        return delta;
+    }
+
+    // 再次进入购物面板时刷新商品数据：只拉取上次同步之后的变化
+    private void refreshData() {
+        if (catalogTask != null) {
+            // 上一次加载或同步仍在进行
+            return;
+        }
+        if (!catalogLoaded) {
+            // 上次加载失败或被取消，重新加载
+            loadCatalogAsync();
+            return;
+        }
+        syncInBackground();
+    }
+
+    // 在后台获取最新目录，完成后在 EDT 上一次性替换当前显示的数据
+    private void syncInBackground() {
+        if (pagedModel != null) {
+            // 分页模式：后台重新下载快照后整体替换
+            CompletableFuture<CatalogSnapshot> task = ServerClient.getInstance().callAsync(this::downloadSnapshot);
+            trackCatalogTask(task, "正在同步最新药品数据...", "同步失败，当前显示的可能不是最新数据");
+            task.thenAcceptAsync(fresh -> {
+                pagedModel.replaceSource(fresh, fresh.load(0, PagedCatalogModel.PAGE_SIZE, currentCategory));
+                // 订阅重连与结账都以新快照的版本为准
+                catalogVersion = fresh.getVersion();
+                fresh.deleteOthers();
+            }, ServerClient.EDT);
+            return;
+        }
+        long sinceVersion = catalogVersion;
+        CompletableFuture<CatalogDelta> task = ServerClient.getInstance().callAsync(() -> fetchCatalog(sinceVersion));
+        trackCatalogTask(task, "正在同步最新药品数据...", "同步失败，当前显示的可能不是最新数据");
+        task.thenAcceptAsync(delta -> {
+            // 期间若已通过其他途径同步过则丢弃这次结果
+            if (catalogVersion == sinceVersion && applyCatalogDelta(delta)) {
+                saveSnapshotInBackground();
+            }
+        }, ServerClient.EDT);
+    }
+
+    // 在顶部显示后台任务的进度，任务结束后自动隐藏；用户可点击"取消"放弃
+    private void trackCatalogTask(CompletableFuture<?> task, String progressMessage, String failureMessage) {
+        catalogTask = task;
+        catalogStatusLabel.setText(progressMessage);
+        cancelLoadButton.setVisible(true);
+        task.whenCompleteAsync((result, error) -> {
+            if (catalogTask != task) {
+                return;
+            }
+            catalogTask = null;
+            cancelLoadButton.setVisible(false);
+            if (error == null) {
+                catalogStatusLabel.setText("");
+            } else if (ServerClient.isCancellation(error)) {
+                catalogStatusLabel.setText("已取消");
+            } else {
+                error.printStackTrace();
+                catalogStatusLabel.setText(failureMessage);
+            }
+        }, ServerClient.EDT);
+    }
+
+    // 把完整目录边下载边写入新快照，不在堆内存中保留整个目录
+    private CatalogSnapshot downloadSnapshot() throws IOException {
+        try (WireCodec.Decoder decoder = openBinaryCatalog()) {
+            if (decoder != null) {
+                try (CatalogSnapshot.Writer writer = new CatalogSnapshot.Writer(CatalogSnapshot.defaultDirectory())) {
+                    return writer.finish(decoder.readCatalog(writer::add));
+                }
+            }
+        }
+        try {
+            return downloadSnapshot(ServerClient.OP_CATALOG_DELTA, "0");
+        } catch (IOException e) {
+            // 服务器不支持增量同步，退回整体下载
+            return downloadSnapshot(ServerClient.OP_CATALOG, "获取商品列表");
+        }
+    }
+
+    private CatalogSnapshot downloadSnapshot(int opcode, String payload) throws IOException {
+        try (CatalogSnapshot.Writer writer = new CatalogSnapshot.Writer(CatalogSnapshot.defaultDirectory());
+                JsonReader reader = new JsonReader(ServerClient.getInstance().openStream(opcode, payload))) {
+            if (opcode == ServerClient.OP_CATALOG) {
+                readMedicineRows(reader, writer::add);
+                return writer.finish(0);
+            }
+            long version = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextNameIndex(DELTA_FIELDS)) {
+                    case 0:
+                        version = reader.nextLong(0);
+                        break;
+                    case 2:
+                        readMedicineRows(reader, writer::add);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return writer.finish(version);
+        }
+    }
+
+    // 以二进制编码下载完整目录；服务器不支持时返回 null，由调用方退回 JSON
+    private static CatalogDelta loadBinaryCatalog() throws IOException {
+        try (WireCodec.Decoder decoder = openBinaryCatalog()) {
+            if (decoder == null) {
+                return null;
+            }
+            CatalogDelta delta = new CatalogDelta();
+            delta.full = true;
+            delta.version = decoder.readCatalog(collectRows(delta.upserts));
+            return delta;
+        }
+    }
+
+    // 请求二进制编码的完整目录并读取消息头；服务器不支持（或请求在收到数据前失败）时返回 null
+    private static WireCodec.Decoder openBinaryCatalog() {
+        ServerClient client = ServerClient.getInstance();
+        if (!client.preferBinary()) {
+            return null;
+        }
+        try {
+            WireCodec.Decoder decoder = WireCodec.Decoder.open(
+                    client.openStream(ServerClient.OP_CATALOG_BINARY, String.valueOf(WireCodec.VERSION)));
+            if (decoder == null) {
+                client.binaryUnsupported();
+            }
+            return decoder;
+        } catch (IOException e) {
+            if (ServerClient.isUnsupported(e)) {
+                client.binaryUnsupported();
+            }
+            return null;
+        }
+    }
+
+    // 把当前内存中的目录写成快照，供下次启动立即显示
+    private void saveSnapshotInBackground() {
+        Object[][] rows = catalogModel.toRows();
+        long version = catalogVersion;
+        ServerClient.getInstance().callAsync(() -> {
+            CatalogSnapshot.write(CatalogSnapshot.defaultDirectory(), version, rows).deleteOthers();
+            return null;
+        }).exceptionally(error -> {
+            error.printStackTrace();
+            return null;
+        });
+    }
+
+    // 请求指定版本之后的商品变化
+    private CatalogDelta loadCatalogDelta(long sinceVersion) throws IOException {
+        try (JsonReader reader = new JsonReader(ServerClient.getInstance()
+                .openStream(ServerClient.OP_CATALOG_DELTA, String.valueOf(sinceVersion)))) {
+            CatalogDelta delta = new CatalogDelta();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextNameIndex(DELTA_FIELDS)) {
+                    case 0:
+                        delta.version = reader.nextLong(0);
+                        break;
+                    case 1:
+                        delta.full = reader.nextBoolean();
+                        break;
+                    case 2:
+                        readMedicineRows(reader, collectRows(delta.upserts));
+                        break;
+                    case 3:
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            delta.deletes.add(reader.nextString());
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
                 }
             }
+            reader.endObject();
+            // 从版本 0 同步时服务器返回的必然是全量
+            delta.full |= sinceVersion == 0;
+            return delta;
+        }
+    }
 
-            medicineData = dataList.toArray(new Object[0][]);
+    // 将增量变化应用到目录模型，只触发受影响行的事件；返回数据是否有变化
+    private boolean applyCatalogDelta(CatalogDelta delta) {
+        catalogVersion = delta.version;
+        if (delta.full) {
+            catalogModel.setRows(delta.upserts.toArray(new Object[0][]));
+            return true;
+        }
+        return catalogModel.apply(delta.upserts, delta.deletes);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            medicineData = new Object[0][0];
+    // 请求一页商品数据（在分页模型的后台线程中调用）
+    private PagedCatalogModel.Page loadCatalogPage(int offset, int limit, String category) throws IOException {
+        String payload = offset + "\n" + limit + "\n" + category;
+        try (JsonReader reader = new JsonReader(
+                ServerClient.getInstance().openStream(ServerClient.OP_CATALOG_PAGE, payload))) {
+            int total = 0;
+            List<Object[]> rows = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextNameIndex(PAGE_FIELDS)) {
+                    case 0:
+                        total = (int) reader.nextLong(0);
+                        break;
+                    case 1:
+                        // 分页的行直接用于显示，读取时格式化
+                        readMedicineRows(reader, (id, name, itemCategory, priceFen, stock) -> rows.add(
+                                PagedCatalogModel.displayRow(id, name, itemCategory, priceFen, stock)));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return new PagedCatalogModel.Page(total, rows.toArray(new Object[0][]));
+        }
+    }
+
+    // 解析商品数组：[{"id":..,"name":..,"category":..,"price":..,"stock":..}, ...]
+    private static void readMedicineRows(JsonReader reader, WireCodec.RowSink sink) throws IOException {
+        if (reader.peek() == JsonReader.END_DOCUMENT) {
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String id = "", name = "", category = "";
+            long priceFen = 0;
+            int stock = -1;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextNameIndex(MEDICINE_FIELDS)) {
+                    case 0:
+                        id = reader.nextString();
+                        break;
+                    case 1:
+                        name = reader.nextString();
+                        break;
+                    case 2:
+                        // 类别取值有限，复用同一字符串实例
+                        category = reader.nextPooledString();
+                        break;
+                    case 3:
+                        priceFen = Money.parse(reader.nextString(), 0);
+                        break;
+                    case 4:
+                        stock = CatalogTableModel.parseStock(reader.nextString());
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            // 只有当解析出有效数据时才添加
+            if (!id.isEmpty()) {
+                sink.accept(id, name, category, priceFen, stock);
+            }
+        }
+        reader.endArray();
+    }
+
+    // 把解析出的商品逐行放入列表（行格式见 `CatalogTableModel.row`）
+    private static WireCodec.RowSink collectRows(List<Object[]> rows) {
+        return (id, name, category, priceFen, stock) -> rows.add(
+                CatalogTableModel.row(id, name, category, priceFen, stock));
+    }
+
+    /**
+     * 后台加载得到的初始目录，由 installCatalog 在 EDT 上安装
+     */
+    private static class InitialCatalog {
+        Object[][] rows = new Object[0][0];
+        long version;
+        // 不为 null 时使用分页模型
+        PagedCatalogModel.PageSource pageSource;
+        PagedCatalogModel.Page firstPage;
+        // 数据来自本地快照或分页接口，安装后需在后台继续同步
+        boolean needsSync;
+        // 数据刚从服务器下载，安装后写入本地快照
+        boolean needsSave;
+    }
+
+    /**
+     * 一次增量同步的结果
+     */
+    private static class CatalogDelta {
+        long version;
+        // 为 true 时 upserts 是完整目录，需整体替换
+        boolean full;
+        List<Object[]> upserts = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+    }
+
+    /**
+     * 服务器推送的单个商品价格与库存变化（小于 0 的字段表示不变）
+     */
+    private static class StockUpdate {
+        final String id;
+        final long priceFen;
+        final int stock;
+
+        StockUpdate(String id, long priceFen, int stock) {
+            this.id = id;
+            this.priceFen = priceFen;
+            this.stock = stock;
         }
     }
 
@@ -120,9 +649,33 @@ public class ShopList {
         this.currentUser = username;
     }
 
-    // 创建购物面板
+    /**
+     * 窗口关闭时调用（EDT）：停止价格与库存订阅，移除购物车和发件箱的监听器并停止计时器。
+     * 关闭推送流以唤醒阻塞在读取上的订阅线程。
+     */
+    public void dispose() {
+        disposed = true;
+        closeQuietly(stockStream);
+        if (stockSubscription != null) {
+            stockSubscription.interrupt();
+        }
+        Cart.getInstance().removeListener(cartListener);
+        CompletableFuture.supplyAsync(OrderOutbox::getInstance)
+                .thenAccept(outbox -> outbox.removeListener(outboxListener));
+        if (outboxTimer != null) {
+            outboxTimer.stop();
+        }
+    }
+
+    // 创建购物面板（再次进入时复用已有面板，只同步变化的商品）
     public JPanel createShopPanel() {
-        loadData();
+        if (shopPanel != null) {
+            if (table.isEditing()) {
+                table.getCellEditor().stopCellEditing();
+            }
+            refreshData();
+            return shopPanel;
+        }
         JPanel panel = new JPanel();
         panel.setSize(Constant.STD_WINDOWS_WIDTH, Constant.STD_WINDOWS_HEIGHT);
         // 使用 BoxLayout 垂直布局
@@ -135,15 +688,24 @@ public class ShopList {
         panel.add(topPanel);
 
         // 增加垂直间距
-        panel.add(Box.createVerticalStrut(24));
+        panel.add(Box.createVerticalStrut(12));
+
+        // 价格区间与库存过滤
+        panel.add(createFilterPanel());
+        panel.add(Box.createVerticalStrut(12));
 
         // 创建表格和滚动面板
         JScrollPane scrollPane = createScrollPane();
         panel.add(scrollPane);
 
-        // 初次更新总价显示
+        // 初次更新总价显示，之后随购物车事件更新
         updateTotalLabel();
+        Cart.getInstance().addListener(cartListener);
+
+        // 商品数据在后台加载，期间界面保持响应
+        loadCatalogAsync();
 
+        shopPanel = panel;
         return panel;
     }
 
@@ -167,12 +729,63 @@ public class ShopList {
         topPanel.add(Box.createHorizontalStrut(10));
 
         // 创建类别下拉列表
-        JComboBox<String> categoryBox = createCategoryTable();
-        categoryBox.setMaximumSize(new DimensionUIResource(150, 30));
+        categoryBox = createCategoryTable();
+        categoryBox.setMaximumSize(new DimensionUIResource(170, 30));
         topPanel.add(categoryBox);
+        topPanel.add(Box.createHorizontalStrut(16));
+
+        // 搜索框：支持药品名称、拼音首字母与编号，输入停顿后在后台查询
+        JLabel searchLabel = new JLabel("搜索:");
+        searchLabel.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 16));
+        topPanel.add(searchLabel);
+        topPanel.add(Box.createHorizontalStrut(10));
+        searchField = createSearchField();
+        topPanel.add(searchField);
+        topPanel.add(Box.createHorizontalStrut(16));
+
+        // 加载/同步进度及取消按钮
+        catalogStatusLabel = new JLabel("");
+        catalogStatusLabel.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 13));
+        catalogStatusLabel.setForeground(new ColorUIResource(107, 114, 128));
+        topPanel.add(catalogStatusLabel);
+        topPanel.add(Box.createHorizontalStrut(6));
+        cancelLoadButton = new JButton("取消");
+        cancelLoadButton.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 12));
+        cancelLoadButton.setFocusPainted(false);
+        cancelLoadButton.setVisible(false);
+        cancelLoadButton.addActionListener(e -> {
+            if (catalogTask != null) {
+                catalogTask.cancel(true);
+            }
+        });
+        topPanel.add(cancelLoadButton);
 
         topPanel.add(Box.createHorizontalGlue());
 
+        // 待上传订单提示（没有待上传订单时隐藏），点击立即重试
+        outboxLabel = new JLabel("");
+        outboxLabel.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 13));
+        outboxLabel.setForeground(new ColorUIResource(217, 119, 6));
+        outboxLabel.setBorder(BorderFactory.createEmptyBorder(6, 6, 6, 12));
+        outboxLabel.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        outboxLabel.setVisible(false);
+        outboxLabel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                OrderOutbox.getInstance().retryNow();
+            }
+        });
+        topPanel.add(outboxLabel);
+        outboxTimer = new Timer(1000, e -> updateOutboxLabel());
+        // 发件箱首次创建时要读取本地订单日志，在后台获取后再注册监听
+        CompletableFuture.supplyAsync(OrderOutbox::getInstance).thenAcceptAsync(outbox -> {
+            if (disposed) {
+                return;
+            }
+            outbox.addListener(outboxListener);
+            updateOutboxLabel();
+        }, ServerClient.EDT);
+
         // 在"查看购物车"左侧添加总价标签
         totalPriceLabel = new JLabel("总价: 0.00元");
         totalPriceLabel.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.BOLD, 14));
@@ -192,24 +805,157 @@ public class ShopList {
         return topPanel;
     }
 
+    // 创建过滤条件面板：价格区间（回车或失焦时生效）与仅显示有货
+    private JPanel createFilterPanel() {
+        JPanel filterPanel = new JPanel();
+        filterPanel.setLayout(new BoxLayout(filterPanel, BoxLayout.X_AXIS));
+        filterPanel.setMaximumSize(new DimensionUIResource(Integer.MAX_VALUE, 32));
+
+        JLabel priceLabel = new JLabel("价格区间:");
+        priceLabel.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 14));
+        filterPanel.add(priceLabel);
+        filterPanel.add(Box.createHorizontalStrut(8));
+        minPriceField = createPriceField();
+        filterPanel.add(minPriceField);
+        filterPanel.add(Box.createHorizontalStrut(6));
+        filterPanel.add(new JLabel("—"));
+        filterPanel.add(Box.createHorizontalStrut(6));
+        maxPriceField = createPriceField();
+        filterPanel.add(maxPriceField);
+        filterPanel.add(Box.createHorizontalStrut(4));
+        filterPanel.add(new JLabel("元"));
+        filterPanel.add(Box.createHorizontalStrut(24));
+
+        inStockOnlyBox = new JCheckBox("仅显示有货");
+        inStockOnlyBox.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 14));
+        inStockOnlyBox.setFocusPainted(false);
+        inStockOnlyBox.addActionListener(e -> applyFilters());
+        filterPanel.add(inStockOnlyBox);
+        filterPanel.add(Box.createHorizontalGlue());
+        return filterPanel;
+    }
+
+    private JTextField createSearchField() {
+        JTextField field = new JTextField(12);
+        field.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 14));
+        field.setMaximumSize(new DimensionUIResource(180, 30));
+        field.setToolTipText("输入药品名称、拼音首字母（如 amxl）或编号");
+        // 每次输入只重启定时器，停顿 150ms 后才真正查询
+        searchTimer = new Timer(150, e -> runSearch());
+        searchTimer.setRepeats(false);
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+        });
+        return field;
+    }
+
+    // 在后台查询搜索索引，结果回到 EDT 作为过滤条件交给表格模型
+    private void runSearch() {
+        String query = searchField.getText().trim();
+        int sequence = ++searchSequence;
+        if (query.isEmpty()) {
+            catalogModel.setSearchResult(null);
+            return;
+        }
+        SearchIndex index = searchIndex;
+        if (index == null) {
+            // 索引尚未建好，建好后会重新查询
+            return;
+        }
+        ServerClient.getInstance().callAsync(() -> index.search(query))
+                .thenAcceptAsync(ids -> {
+                    if (sequence == searchSequence) {
+                        catalogModel.setSearchResult(ids);
+                    }
+                }, ServerClient.EDT);
+    }
+
+    // 目录数据变化后在后台重建搜索索引，建好后用当前输入重新查询
+    private void rebuildSearchIndex() {
+        long version = catalogModel.getDataVersion();
+        if (version == searchIndexVersion) {
+            return;
+        }
+        searchIndexVersion = version;
+        String[] ids = catalogModel.copyIds();
+        String[] names = catalogModel.copyNames();
+        ServerClient.getInstance().callAsync(() -> SearchIndex.build(ids, names, ids.length))
+                .thenAcceptAsync(index -> {
+                    if (catalogModel.getDataVersion() != version) {
+                        // 期间目录又有变化，等待更新的索引
+                        return;
+                    }
+                    searchIndex = index;
+                    if (!searchField.getText().trim().isEmpty()) {
+                        runSearch();
+                    }
+                }, ServerClient.EDT)
+                .exceptionally(error -> {
+                    error.printStackTrace();
+                    return null;
+                });
+    }
+
+    private JTextField createPriceField() {
+        JTextField field = new JTextField(6);
+        field.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 14));
+        field.setMaximumSize(new DimensionUIResource(80, 28));
+        field.addActionListener(e -> applyFilters());
+        field.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                applyFilters();
+            }
+        });
+        return field;
+    }
+
     // 创建表格和滚动面板
     private JScrollPane createScrollPane() {
-        // 创建表格模型
-        tableModel = new DefaultTableModel(medicineData, columnNames) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                // 只有"操作"列可编辑（为了让控件响应点击/输入）
-                return column == 5;
+        // 创建表格模型（数据在后台加载完成后填入）：目录数据变化时刷新类别列表并重建搜索索引；
+        // 单行更新（推送的价格库存、购物车变化）只在类别计数失效时重绘类别下拉列表
+        catalogModel = new CatalogTableModel(columnNames);
+        catalogModel.addTableModelListener(e -> {
+            long version = catalogModel.getDataVersion();
+            if (version != categoriesVersion) {
+                categoriesVersion = version;
+                refreshCategoryBox();
+                rebuildSearchIndex();
+            } else if (categoryBox != null
+                    && (e.getFirstRow() == TableModelEvent.HEADER_ROW || catalogModel.isFacetCountsStale())) {
+                categoryBox.repaint();
             }
-        };
+        });
 
-        // 创建表格并添加到滚动面板
-        this.table = new JTable(tableModel);
+        // 创建表格并添加到滚动面板（商品很多时加载完成后换成分页模型）
+        this.table = new JTable(catalogModel);
         beutifyTable(this.table);
+        configureColumns();
 
+        JScrollPane scrollPane = new JScrollPane(this.table);
+        beutifyScrollPane(scrollPane);
+        return scrollPane;
+    }
+
+    // 配置各列的渲染器、编辑器与列宽（更换表格模型后需重新配置）
+    private void configureColumns() {
         // 设置新的渲染器和编辑器：显示 - [数量] +
         this.table.getColumnModel().getColumn(5).setCellRenderer(new QuantityCellRenderer());
-        this.table.getColumnModel().getColumn(5).setCellEditor(new QuantityCellEditor(this.table));
+        quantityEditor = new QuantityCellEditor(this.table);
+        this.table.getColumnModel().getColumn(5).setCellEditor(quantityEditor);
 
         // 设置列宽
         this.table.getColumnModel().getColumn(0).setPreferredWidth(60); // ID列宽度缩小
@@ -218,31 +964,81 @@ public class ShopList {
         this.table.getColumnModel().getColumn(1).setPreferredWidth(200); // 药品名称列宽度增加
         this.table.getColumnModel().getColumn(4).setPreferredWidth(80); // 库存列宽度
         this.table.getColumnModel().getColumn(5).setPreferredWidth(200); // 操作列宽度
-
-        JScrollPane scrollPane = new JScrollPane(this.table);
-        beutifyScrollPane(scrollPane);
-        return scrollPane;
     }
 
     private JComboBox<String> createCategoryTable() {
+        // 目录加载前（以及分页模式下）使用默认类别，加载后改为数据中实际存在的类别
         String[] categories = { "全部", "抗生素", "维生素", "感冒药", "心血管" };
-        JComboBox<String> categoryBox = new JComboBox<>(categories);
-        categoryBox.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 14));
+        JComboBox<String> box = new JComboBox<>(categories);
+        box.setFont(new FontUIResource("Microsoft YaHei", FontUIResource.PLAIN, 14));
+        // 内存目录中显示各类别满足当前条件的商品数
+        box.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                String text = (String) value;
+                if (value != null && pagedModel == null && catalogModel.size() > 0) {
+                    text = value + " (" + catalogModel.getFacetCount((String) value) + ")";
+                }
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
         // 添加事件监听器
-        categoryBox.addActionListener(e -> updateTableData((String) categoryBox.getSelectedItem()));
-        return categoryBox;
+        box.addActionListener(e -> {
+            if (!updatingCategories) {
+                updateTableData((String) box.getSelectedItem());
+            }
+        });
+        return box;
+    }
+
+    // 目录数据变化后刷新类别列表（类别有增减时才重建列表内容），计数随重绘更新
+    private void refreshCategoryBox() {
+        if (categoryBox == null || pagedModel != null || catalogModel.size() == 0) {
+            return;
+        }
+        List<String> categories = new ArrayList<>();
+        categories.add("全部");
+        categories.addAll(catalogModel.getCategories());
+        if (!categories.contains(currentCategory)) {
+            // 当前选中的类别暂时没有商品，仍保留在列表中
+            categories.add(currentCategory);
+        }
+        boolean same = categories.size() == categoryBox.getItemCount();
+        for (int i = 0; same && i < categories.size(); i++) {
+            same = categories.get(i).equals(categoryBox.getItemAt(i));
+        }
+        if (!same) {
+            updatingCategories = true;
+            try {
+                categoryBox.setModel(new DefaultComboBoxModel<>(categories.toArray(new String[0])));
+                categoryBox.setSelectedItem(currentCategory);
+            } finally {
+                updatingCategories = false;
+            }
+        }
+        categoryBox.repaint();
     }
 
     // 更新表格数据
     private void updateTableData(String category) {
-        // setRowCount 用于设置表格的行数
-        tableModel.setRowCount(0); // 清空当前表格数据
-        for (Object[] row : medicineData) {
-            // 如果选择"全部"或者类别匹配，则添加该行
-            if ("全部".equals(category) || row[2].equals(category)) {
-                tableModel.addRow(row);
-            }
+        currentCategory = category;
+        if (pagedModel != null) {
+            // 分页模式由服务器按类别过滤
+            pagedModel.setCategory(category);
+            return;
+        }
+        applyFilters();
+    }
+
+    // 按当前类别、价格区间与库存条件过滤内存目录（一次替换可见行，只触发一次表格事件）
+    private void applyFilters() {
+        if (pagedModel != null) {
+            return;
         }
+        long minPrice = Money.parse(minPriceField.getText(), 0);
+        long maxPrice = Money.parse(maxPriceField.getText(), Long.MAX_VALUE);
+        catalogModel.setFilter(currentCategory, minPrice, maxPrice, inStockOnlyBox.isSelected());
     }
 
     // 美化表格边框和滚动条
@@ -276,6 +1072,10 @@ public class ShopList {
 
     // 显示购物车（增加"下单"选项）
     private void showCart() {
+        if (checkoutInProgress) {
+            JOptionPane.showMessageDialog(null, "正在提交订单，请稍候", "购物车", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
         Cart cart = Cart.getInstance();
         List<Cart.CartItem> items = cart.getItems();
 
@@ -288,7 +1088,7 @@ public class ShopList {
         for (Cart.CartItem item : items) {
             message.append(item.toString()).append("\n");
         }
-        message.append("\n总价: ").append(String.format("%.2f", cart.getTotalPrice())).append("元");
+        Money.appendTo(message.append("\n总价: "), cart.getTotalFen()).append("元");
 
         // 使用 JTextArea 和 JScrollPane 来显示长文本，支持超长数据滚动查看
         
@@ -314,106 +1114,252 @@ public class ShopList {
             if (table.isEditing()) {
                 table.getCellEditor().stopCellEditing();
             }
-            cart.clear();
-            updateTotalLabel();
-            tableModel.fireTableDataChanged(); // 刷新表格数据，使操作列数量立即变为0
+            cart.clear(); // 购物车事件会刷新总价与受影响行的数量
             JOptionPane.showMessageDialog(null, "购物车已清空");
         } else if (choice == 0) { // 下单流程：选择支付方式
             Object[] payOptions = { "微信付款", "支付宝付款", "取消" };
             int payChoice = JOptionPane.showOptionDialog(null, "请选择支付方式", "支付",
                     JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, payOptions, payOptions[0]);
             if (payChoice == 0 || payChoice == 1) {
-                // 创建订单历史记录
-                List<OrderHistory.OrderItem> orderItems = new ArrayList<>();
-                for (Cart.CartItem item : cart.getItems()) {
-                    // 查找商品类别
-                    String category = "";
-                    for (Object[] row : medicineData) {
-                        if (item.getId().equals(row[0])) {
-                            category = (String) row[2];
-                            break;
-                        }
-                    }
-                    orderItems.add(new OrderHistory.OrderItem(
-                            item.getId(),
-                            item.getName(),
-                            category,
-                            item.getPrice(),
-                            item.getQuantity()));
-                }
-
-                // 创建订单
-                double totalPrice = cart.getTotalPrice();
-                OrderHistory.Order order = OrderHistory.getInstance().createOrder(orderItems, totalPrice);
-
-                // 将订单发送到服务器保存
-                boolean saveSuccess = saveOrderToServer(order);
-
                 // 确保所有单元格编辑已停止
                 if (table.isEditing()) {
                     table.getCellEditor().stopCellEditing();
                 }
-                // 清空购物车
-                cart.clear();
-                updateTotalLabel();
-                tableModel.fireTableDataChanged(); // 刷新表格数据，使操作列数量立即变为0
-
-                // 显示支付成功信息
-                if (payChoice == 0) {
-                    if (saveSuccess) {
-                        JOptionPane.showMessageDialog(null, "微信付款成功，订单已保存！");
-                    } else {
-                        JOptionPane.showMessageDialog(null, "微信付款成功，但订单保存到服务器失败", "警告", JOptionPane.WARNING_MESSAGE);
-                    }
-                } else if (payChoice == 1) {
-                    if (saveSuccess) {
-                        JOptionPane.showMessageDialog(null, "支付宝付款成功，订单已保存！");
+                // 取出购物车内容并清空（原子操作，购物车事件会刷新总价与受影响行的数量）
+                List<Cart.CartItem> taken = cart.drain();
+                checkout(taken, payChoice == 0 ? "微信" : "支付宝");
+            }
+        }
+    }
+
+    /**
+     * 结账：用一个请求把购物车内容连同下单时看到的价格、库存与目录版本发给服务器（操作码 14），
+     * 服务器核对后扣减库存并保存订单，或者返回冲突的商品
+     *
+     * 设计说明：
+     * - 发出请求前订单先以"待上传"状态记入订单历史（写入本地订单日志），等待响应期间程序退出也不会丢失订单：
+     *   重启后由发件箱上传。订单号作为幂等键，服务器其实已经保存时也不会重复下单。
+     * - 服务器保存后订单改为"已完成"，不再经过发件箱。
+     * - 服务器拒绝（响应第 1 个字节为 0）时订单改为"已取消"：按返回的当前价格与库存只刷新表格中的对应行，
+     *   不重新加载目录；商品按最新价格放回购物车，数量不超过可用库存，由用户确认后重新下单。
+     *   冲突列表缺失或无法解析时同样视为拒绝，商品原样放回购物车，绝不再上传被拒绝的订单。
+     * - 只有请求失败（离线、超时、服务器不支持）或响应为空时才放入发件箱，由后台上传。
+     */
+    private void checkout(List<Cart.CartItem> taken, String channel) {
+        List<OrderHistory.OrderItem> orderItems = new ArrayList<>();
+        Map<String, Integer> seenStock = new HashMap<>();
+        long totalFen = 0;
+        for (Cart.CartItem item : taken) {
+            totalFen += item.getLineFen();
+            orderItems.add(new OrderHistory.OrderItem(
+                    item.getId(),
+                    item.getName(),
+                    findCategory(item.getId()),
+                    item.getPriceFen(),
+                    item.getQuantity()));
+            seenStock.put(item.getId(), findStock(item.getId()));
+        }
+        OrderHistory history = OrderHistory.getInstance();
+        OrderHistory.Order order = new OrderHistory.Order(history.nextOrderId(), orderItems,
+                new Date(), totalFen, OrderHistory.STATUS_PENDING_UPLOAD, currentUser);
+        // 先取得发件箱：它在创建时从订单历史恢复待上传的订单，之后记录的订单只有放入时才会上传
+        OrderOutbox outbox = OrderOutbox.getInstance();
+        history.addOrder(order);
+
+        checkoutInProgress = true;
+        ServerClient.getInstance()
+                .submit(ServerClient.OP_CHECKOUT, OrderOutbox.toJson(order, catalogVersion, seenStock))
+                .whenCompleteAsync((response, error) -> {
+                    checkoutInProgress = false;
+                    if (error != null || response.length == 0) {
+                        // 服务器不支持或暂时无法连接：放入发件箱由后台上传，失败时自动重试
+                        outbox.submit(order);
+                        JOptionPane.showMessageDialog(null, channel + "付款成功，订单已保存，将在后台上传到服务器！");
+                    } else if (response[0] != 0) {
+                        history.updateStatus(order, OrderHistory.STATUS_COMPLETED);
+                        JOptionPane.showMessageDialog(null, channel + "付款成功，订单已提交到服务器！");
                     } else {
-                        JOptionPane.showMessageDialog(null, "支付宝付款成功，但订单保存到服务器失败", "警告", JOptionPane.WARNING_MESSAGE);
+                        history.updateStatus(order, OrderHistory.STATUS_CANCELLED);
+                        List<StockUpdate> conflicts;
+                        try {
+                            conflicts = readCheckoutConflicts(response);
+                        } catch (IOException | RuntimeException e) {
+                            // 冲突列表无法解析：仍按拒绝处理，商品原样放回购物车
+                            e.printStackTrace();
+                            conflicts = new ArrayList<>();
+                        }
+                        rejectCheckout(taken, conflicts);
                     }
+                }, ServerClient.EDT);
+    }
+
+    // 解析结账被拒绝时的冲突列表：第 1 个字节之后为 [{"id":"...","price":"12.50","stock":N}, ...]
+    private static List<StockUpdate> readCheckoutConflicts(byte[] response) throws IOException {
+        List<StockUpdate> conflicts = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new ByteArrayInputStream(response, 1, response.length - 1))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                StockUpdate conflict = readStockUpdate(reader);
+                if (conflict != null) {
+                    conflicts.add(conflict);
                 }
             }
+            reader.endArray();
         }
+        return conflicts;
     }
 
-    // 渲染器：只负责显示当前购物车数量（不可交互）
-    class QuantityCellRenderer extends JPanel implements TableCellRenderer {
-        public QuantityCellRenderer() {
-            setLayout(new FlowLayout(FlowLayout.CENTER, 6, 6));
+    // EDT：结账因价格或库存变化被拒绝：刷新冲突的行，把商品按最新价格与库存放回购物车并提示用户
+    private void rejectCheckout(List<Cart.CartItem> taken, List<StockUpdate> conflicts) {
+        Map<String, StockUpdate> byId = new HashMap<>();
+        for (StockUpdate conflict : conflicts) {
+            applyStockUpdate(conflict);
+            byId.put(conflict.id, conflict);
+        }
+        StringBuilder message = new StringBuilder(conflicts.isEmpty() ? "服务器拒绝了本次下单，未扣减库存。\n"
+                : "部分商品的价格或库存已变化，本次未下单：\n\n");
+        Cart cart = Cart.getInstance();
+        cart.batch(() -> {
+            for (Cart.CartItem item : taken) {
+                StockUpdate conflict = byId.get(item.getId());
+                long priceFen = item.getPriceFen();
+                int quantity = item.getQuantity();
+                if (conflict != null) {
+                    message.append(item.getName());
+                    int detail = message.length();
+                    if (conflict.priceFen >= 0 && conflict.priceFen != priceFen) {
+                        priceFen = conflict.priceFen;
+                        Money.appendTo(message.append("：价格变为 "), priceFen).append("元");
+                    }
+                    if (conflict.stock >= 0 && conflict.stock < quantity) {
+                        quantity = conflict.stock;
+                        message.append(quantity == 0 ? "：已售罄" : "：库存仅剩 " + quantity);
+                    }
+                    if (message.length() == detail) {
+                        message.append("：信息已更新");
+                    }
+                    message.append("\n");
+                }
+                if (quantity > 0) {
+                    cart.addItem(item.getId(), item.getName(), priceFen, quantity);
+                }
+            }
+        });
+        message.append(conflicts.isEmpty() ? "\n商品已放回购物车，请稍后重新下单。"
+                : "\n购物车已按最新价格与库存调整，请确认后重新下单。");
+        JOptionPane.showMessageDialog(null, message.toString(), "下单失败", JOptionPane.WARNING_MESSAGE);
+    }
+
+    /**
+     * 渲染器：只负责显示当前购物车数量（不可交互），外观与编辑器的 - [数量] + 一致
+     *
+     * 设计说明：
+     * - 表格滚动时每个可见行都会调用一次渲染器，因此这里不创建任何组件、字体、边框或字符串：
+     *   `getTableCellRendererComponent` 只记下数量和背景色，`paintComponent` 直接用 Graphics2D 画出三个框。
+     * - 字体与颜色为静态常量，字体度量在构造时取一次；0..999 的数量文本预先生成。
+     */
+    static class QuantityCellRenderer extends JComponent implements TableCellRenderer {
+        private static final Font SIGN_FONT = new Font("Microsoft YaHei", Font.BOLD, 14);
+        private static final Font QTY_FONT = new Font("Microsoft YaHei", Font.PLAIN, 12);
+        private static final Color SIGN_BORDER = new Color(220, 220, 220);
+        private static final Color FIELD_BORDER = new Color(200, 200, 200);
+        private static final int BOX_SIZE = 28;
+        private static final int FIELD_WIDTH = 96; // 显示框宽度翻倍（原来约48 -> 96）
+        private static final int GAP = 6;
+        private static final String MINUS = "\u2212"; // Unicode 减号
+        private static final String PLUS = "+";
+        private static final String[] QTY_TEXTS = new String[1000];
+
+        static {
+            for (int i = 0; i < QTY_TEXTS.length; i++) {
+                QTY_TEXTS[i] = String.valueOf(i);
+            }
+        }
+
+        private final FontMetrics signMetrics;
+        private final FontMetrics qtyMetrics;
+        private String qtyText = QTY_TEXTS[0];
+
+        QuantityCellRenderer() {
+            setOpaque(true);
+            signMetrics = getFontMetrics(SIGN_FONT);
+            qtyMetrics = getFontMetrics(QTY_FONT);
+            setPreferredSize(new Dimension(BOX_SIZE * 2 + FIELD_WIDTH + GAP * 4, BOX_SIZE + GAP * 2));
         }
 
+        @Override
         public Component getTableCellRendererComponent(JTable table, Object value,
                 boolean isSelected, boolean hasFocus, int row, int column) {
-            removeAll();
-            String id = (String) table.getValueAt(row, 0);
-            int qty = getCartQuantity(id);
+            int qty = Cart.getInstance().getQuantity((String) table.getValueAt(row, 0));
+            qtyText = qty >= 0 && qty < QTY_TEXTS.length ? QTY_TEXTS[qty] : String.valueOf(qty);
+            setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+            setForeground(table.getForeground());
+            return this;
+        }
 
-            JLabel minus = new JLabel("\u2212", SwingConstants.CENTER); // Unicode 减号
-            minus.setPreferredSize(new Dimension(28, 28));
-            minus.setFont(new Font("Microsoft YaHei", Font.BOLD, 14));
-            minus.setBorder(BorderFactory.createLineBorder(new ColorUIResource(220, 220, 220)));
-            add(minus);
+        @Override
+        protected void paintComponent(Graphics g) {
+            int w = getWidth();
+            int h = getHeight();
+            g.setColor(getBackground());
+            g.fillRect(0, 0, w, h);
+
+            int x = (w - (BOX_SIZE * 2 + FIELD_WIDTH + GAP * 2)) / 2;
+            int y = (h - BOX_SIZE) / 2;
+            paintBox(g, x, y, BOX_SIZE, SIGN_BORDER, null, MINUS, SIGN_FONT, signMetrics);
+            x += BOX_SIZE + GAP;
+            paintBox(g, x, y, FIELD_WIDTH, FIELD_BORDER, Color.WHITE, qtyText, QTY_FONT, qtyMetrics);
+            x += FIELD_WIDTH + GAP;
+            paintBox(g, x, y, BOX_SIZE, SIGN_BORDER, null, PLUS, SIGN_FONT, signMetrics);
+        }
 
-            // 显示框宽度翻倍（原来约48 -> 96）
-            JTextField qtyField = new JTextField(String.valueOf(qty), 4);
-            qtyField.setHorizontalAlignment(SwingConstants.CENTER);
-            qtyField.setEditable(false);
-            qtyField.setPreferredSize(new Dimension(96, 28)); // 翻倍宽度
-            qtyField.setBorder(BorderFactory.createLineBorder(new ColorUIResource(200, 200, 200)));
-            add(qtyField);
+        // 画一个带边框的框，文字居中；fill 为 null 时沿用背景色
+        private void paintBox(Graphics g, int x, int y, int width, Color border, Color fill,
+                String text, Font font, FontMetrics metrics) {
+            if (fill != null) {
+                g.setColor(fill);
+                g.fillRect(x, y, width, BOX_SIZE);
+            }
+            g.setColor(border);
+            g.drawRect(x, y, width - 1, BOX_SIZE - 1);
+            g.setColor(getForeground());
+            g.setFont(font);
+            int textX = x + (width - metrics.stringWidth(text)) / 2;
+            int textY = y + (BOX_SIZE - metrics.getHeight()) / 2 + metrics.getAscent();
+            g.drawString(text, textX, textY);
+        }
 
-            JLabel plus = new JLabel("+", SwingConstants.CENTER);
-            plus.setPreferredSize(new Dimension(28, 28));
-            plus.setFont(new Font("Microsoft YaHei", Font.BOLD, 14));
-            plus.setBorder(BorderFactory.createLineBorder(new ColorUIResource(220, 220, 220)));
-            add(plus);
+        // 渲染器只用于绘制，以下方法置空以免每次绘制触发重新布局或属性变化通知（与 DefaultTableCellRenderer 相同）
+        @Override
+        public void invalidate() {
+        }
 
-            if (isSelected) {
-                setBackground(table.getSelectionBackground());
-            } else {
-                setBackground(table.getBackground());
-            }
-            return this;
+        @Override
+        public void validate() {
+        }
+
+        @Override
+        public void revalidate() {
+        }
+
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {
+        }
+
+        @Override
+        public void repaint(Rectangle r) {
+        }
+
+        @Override
+        public void repaint() {
+        }
+
+        @Override
+        protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
+        }
+
+        @Override
+        public void firePropertyChange(String propertyName, boolean oldValue, boolean newValue) {
         }
     }
 
@@ -463,9 +1409,7 @@ public class ShopList {
                         return;
                     String id = (String) table.getValueAt(editingRow, 0);
                     String name = (String) table.getValueAt(editingRow, 1);
-                    String priceStr = (String) table.getValueAt(editingRow, 3);
-                    String stockStr = (String) table.getValueAt(editingRow, 4);
-                    int stock = parseStock(stockStr);
+                    int stock = rowStock(editingRow);
                     int current = getCartQuantity(id);
 
                     if (current >= stock) {
@@ -474,11 +1418,7 @@ public class ShopList {
                         return;
                     }
 
-                    double price = 0.0;
-                    try {
-                        price = Double.parseDouble(priceStr);
-                    } catch (Exception ex) {
-                    }
+                    long price = rowPriceFen(editingRow);
                     // 增加1（再次检查不超过库存）
                     if (current + 1 > stock) {
                         JOptionPane.showMessageDialog(null, "库存不足", "提示", JOptionPane.WARNING_MESSAGE);
@@ -489,7 +1429,6 @@ public class ShopList {
                     int qty = getCartQuantity(id);
                     qtyField.setText(String.valueOf(qty));
                     previousQty = qty;
-                    updateTotalLabel();
                 }
             });
 
@@ -501,24 +1440,13 @@ public class ShopList {
                         return;
                     String id = (String) table.getValueAt(editingRow, 0);
                     Cart cart = Cart.getInstance();
-                    List<Cart.CartItem> items = cart.getItems();
-                    Cart.CartItem found = null;
-                    for (Cart.CartItem it : items) {
-                        if (it.getId().equals(id)) {
-                            found = it;
-                            break;
-                        }
-                    }
-                    if (found != null) {
-                        int newQty = found.getQuantity() - 1;
-                        if (newQty <= 0)
-                            cart.removeItem(id);
-                        else
-                            found.setQuantity(newQty);
+                    int current = cart.getQuantity(id);
+                    if (current > 0) {
+                        // 数量减到 0 时 setQuantity 会移除该商品
+                        cart.setQuantity(id, null, 0, current - 1);
                         int qty = getCartQuantity(id);
                         qtyField.setText(String.valueOf(qty));
                         previousQty = qty;
-                        updateTotalLabel();
                     } else {
                         qtyField.setText("0");
                         previousQty = 0;
@@ -530,41 +1458,23 @@ public class ShopList {
             qtyField.addActionListener(e -> {
                 commitQtyFromFieldWithStock();
                 stopCellEditing();
-                updateTotalLabel();
             });
             qtyField.addFocusListener(new FocusAdapter() {
                 @Override
                 public void focusLost(FocusEvent e) {
                     commitQtyFromFieldWithStock();
-                    updateTotalLabel();
                 }
             });
         }
 
-        private int parseStock(String stockStr) {
-            if (stockStr == null)
-                return Integer.MAX_VALUE;
-            try {
-                return Integer.parseInt(stockStr.trim());
-            } catch (Exception ex) {
-                return Integer.MAX_VALUE;
-            }
-        }
-
         // 将文本框的数量解析并设置到购物车（带库存校验）
         private void commitQtyFromFieldWithStock() {
             if (editingRow < 0)
                 return;
             String id = (String) table.getValueAt(editingRow, 0);
             String name = (String) table.getValueAt(editingRow, 1);
-            String priceStr = (String) table.getValueAt(editingRow, 3);
-            String stockStr = (String) table.getValueAt(editingRow, 4);
-            int stock = parseStock(stockStr);
-            double price = 0.0;
-            try {
-                price = Double.parseDouble(priceStr);
-            } catch (Exception ex) {
-            }
+            int stock = rowStock(editingRow);
+            long price = rowPriceFen(editingRow);
 
             int newQty;
             try {
@@ -591,6 +1501,14 @@ public class ShopList {
             qtyField.setText(String.valueOf(previousQty));
         }
 
+        // 购物车被其他途径修改后，重新显示正在编辑的商品的数量
+        void refresh() {
+            if (editingRow < 0)
+                return;
+            previousQty = getCartQuantity((String) table.getValueAt(editingRow, 0));
+            qtyField.setText(String.valueOf(previousQty));
+        }
+
         @Override
         public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row,
                 int column) {
@@ -608,180 +1526,135 @@ public class ShopList {
         }
     }
 
-    // 帮助函数：返回购物车中指定商品的数量
-    private int getCartQuantity(String id) {
-        Cart cart = Cart.getInstance();
-        for (Cart.CartItem item : cart.getItems()) {
-            if (item.getId().equals(id))
-                return item.getQuantity();
+    // 帮助函数：按 id 查找商品类别（分页模式下只在已缓存的页中查找），找不到时返回空串
+    private String findCategory(String id) {
+        if (pagedModel != null) {
+            Object[] row = pagedModel.findCachedRow(id);
+            return row != null ? (String) row[2] : "";
         }
-        return 0;
+        int index = catalogModel.indexOf(id);
+        return index >= 0 ? catalogModel.getCategory(index) : "";
     }
 
-    // 帮助函数：设置购物车中指定商品的数量（<=0 则移除）
-    private void setCartQuantity(String id, String name, double price, int qty) {
-        Cart cart = Cart.getInstance();
-        List<Cart.CartItem> items = cart.getItems();
-        Cart.CartItem found = null;
-        for (Cart.CartItem it : items) {
-            if (it.getId().equals(id)) {
-                found = it;
-                break;
+    // 帮助函数：按 id 查找商品库存（分页模式下只在已缓存的页中查找），未知或找不到时返回 -1
+    private int findStock(String id) {
+        if (pagedModel != null) {
+            Object[] row = pagedModel.findCachedRow(id);
+            try {
+                return row != null ? Integer.parseInt(((String) row[4]).trim()) : -1;
+            } catch (NumberFormatException e) {
+                return -1;
             }
         }
-        if (qty <= 0) {
-            cart.removeItem(id);
-            updateTotalLabel();
-            return;
+        int index = catalogModel.indexOf(id);
+        int stock = index >= 0 ? catalogModel.getStock(index) : -1;
+        return stock == Integer.MAX_VALUE ? -1 : stock;
+    }
+
+    // 帮助函数：表格中指定行的库存（内存目录直接读取数值，分页模式解析字符串；未知时不限制）
+    private int rowStock(int row) {
+        if (pagedModel == null) {
+            return catalogModel.getStock(catalogModel.toIndex(table.convertRowIndexToModel(row)));
         }
-        if (found != null) {
-            found.setQuantity(qty);
-        } else {
-            cart.addItem(id, name, price, qty);
+        try {
+            return Integer.parseInt(((String) table.getValueAt(row, 4)).trim());
+        } catch (Exception ex) {
+            return Integer.MAX_VALUE;
         }
-        updateTotalLabel();
     }
 
-    // 更新顶部总价标签
-    private void updateTotalLabel() {
-        if (totalPriceLabel == null)
-            return;
-        Cart cart = Cart.getInstance();
-        totalPriceLabel.setText("总价: " + String.format("%.2f", cart.getTotalPrice()) + "元");
+    // 帮助函数：表格中指定行的单价（分）
+    private long rowPriceFen(int row) {
+        if (pagedModel == null) {
+            return catalogModel.getPriceFen(catalogModel.toIndex(table.convertRowIndexToModel(row)));
+        }
+        return Money.parse((String) table.getValueAt(row, 3), 0);
     }
 
-    // 保存订单到服务器
-    private boolean saveOrderToServer(OrderHistory.Order order) {
-        try {
-            Socket socket = new Socket(Constant.SERVER_IP, Constant.SERVER_PORT);
-            DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-            dos.writeInt(4); // 输入订单数据的类型
-
-            // 构建订单JSON
-            StringBuilder orderJson = new StringBuilder();
-            orderJson.append("    {\n");
-            orderJson.append("      \"orderId\": \"").append(order.getOrderId()).append("\",\n");
-            orderJson.append("      \"username\": \"").append(currentUser).append("\",\n");
-            orderJson.append("      \"orderDate\": \"").append(new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(order.getOrderDate())).append("\",\n");
-            orderJson.append("      \"totalPrice\": \"").append(String.format("%.2f", order.getTotalPrice())).append("\",\n");
-            orderJson.append("      \"status\": \"").append(order.getStatus()).append("\",\n");
-            orderJson.append("      \"items\": [\n");
-            
-            List<OrderHistory.OrderItem> items = order.getItems();
-            for (int i = 0; i < items.size(); i++) {
-                OrderHistory.OrderItem item = items.get(i);
-                orderJson.append("        {\n");
-                orderJson.append("          \"id\": \"").append(item.getId()).append("\",\n");
-                orderJson.append("          \"name\": \"").append(item.getName()).append("\",\n");
-                orderJson.append("          \"category\": \"").append(item.getCategory()).append("\",\n");
-                orderJson.append("          \"price\": \"").append(String.format("%.2f", item.getPrice())).append("\",\n");
-                orderJson.append("          \"quantity\": ").append(item.getQuantity()).append("\n");
-                orderJson.append("        }");
-                if (i < items.size() - 1) {
-                    orderJson.append(",");
-                }
-                orderJson.append("\n");
-            }
-            orderJson.append("      ]\n");
-            orderJson.append("    }");
+    // 帮助函数：返回购物车中指定商品的数量
+    private int getCartQuantity(String id) {
+        return Cart.getInstance().getQuantity(id);
+    }
 
-            dos.writeUTF(orderJson.toString());
-            dos.flush();
+    // 帮助函数：设置购物车中指定商品的数量（<=0 则移除）
+    private void setCartQuantity(String id, String name, long price, int qty) {
+        Cart.getInstance().setQuantity(id, name, price, qty);
+    }
 
-            DataInputStream dis = new DataInputStream(socket.getInputStream());
-            boolean result = dis.readBoolean();
-            socket.close();
-            System.out.println("订单保存成功，用户名：" + currentUser);
-            return result;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+    // 购物车变化：更新总价，只重绘受影响商品所在行的"操作"列（其余行不重新渲染）
+    private void onCartChanged(Cart.CartEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            // 购物车在后台线程被修改
+            SwingUtilities.invokeLater(() -> onCartChanged(event));
+            return;
+        }
+        updateTotalLabel();
+        for (Cart.Change change : event.getChanges()) {
+            int row = pagedModel != null ? pagedModel.findCachedRowIndex(change.getId())
+                    : catalogModel.rowOf(change.getId());
+            if (row < 0) {
+                continue;
+            }
+            int viewRow = table.convertRowIndexToView(row);
+            if (table.isEditing() && table.getEditingRow() == viewRow) {
+                quantityEditor.refresh();
+            }
+            table.repaint(table.getCellRect(viewRow, 5, false));
         }
     }
 
-    // 从服务器加载订单数据
-    private void loadOrdersFromServer() {
-        try {
-            Socket socket = new Socket(Constant.SERVER_IP, Constant.SERVER_PORT);
-            DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-            dos.writeInt(5); // 获取订单数据的类型
-            dos.writeUTF(currentUser);
-            dos.flush();
-
-            DataInputStream dis = new DataInputStream(socket.getInputStream());
-            boolean exists = dis.readBoolean();
-            
-            if (exists) {
-                // 读取并跳过换行符
-                dis.readByte();
-                
-                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line);
-                }
-                
-                String content = sb.toString().trim();
-                // 解析订单JSON并更新ordersData
-                parseOrdersFromJson(content);
-            }
-            
-            socket.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+    // 更新顶部总价标签
+    private void updateTotalLabel() {
+        if (totalPriceLabel == null)
+            return;
+        long total = Cart.getInstance().getTotalFen();
+        if (total == shownTotalFen) {
+            // 总价未变（如数量框失焦但没有修改），不重新设置文本
+            return;
         }
+        shownTotalFen = total;
+        totalPriceLabel.setText(Money.appendTo(new StringBuilder("总价: "), total).append("元").toString());
     }
 
-    // 解析订单JSON数据
-    private void parseOrdersFromJson(String jsonContent) {
-        try {
-            if (!jsonContent.startsWith("[") || !jsonContent.endsWith("]")) {
+    // 刷新待上传订单提示：数量、最早一笔已等待多久、下次重试时间，以及被服务器拒绝的订单数（EDT）
+    private void updateOutboxLabel() {
+        OrderOutbox outbox = OrderOutbox.getInstance();
+        int depth = outbox.getDepth();
+        int rejected = outbox.getRejectedCount();
+        if (depth == 0) {
+            outboxTimer.stop();
+            if (rejected == 0) {
+                outboxLabel.setVisible(false);
                 return;
             }
-            
-            String content = jsonContent.substring(1, jsonContent.length() - 1).trim();
-            if (content.isEmpty()) {
-                return;
-            }
-            
-            String[] orders = content.split("(?<=\\}),\\s*\\{");
-            List<Object[]> orderList = new ArrayList<>();
-            
-            for (String orderStr : orders) {
-                orderStr = orderStr.trim();
-                if (!orderStr.startsWith("{")) {
-                    orderStr = "{" + orderStr;
-                }
-                if (!orderStr.endsWith("}")) {
-                    orderStr = orderStr + "}";
-                }
-                
-                String orderId = "", items = "", orderDate = "", status = "";
-                String[] parts = orderStr.split(",");
-                for (String part : parts) {
-                    part = part.trim();
-                    if (part.contains("\"orderId\"")) {
-                        orderId = part.split(":")[1].replace("\"", "").trim();
-                    } else if (part.contains("\"orderDate\"")) {
-                        orderDate = part.split(":")[1].replace("\"", "").trim();
-                    } else if (part.contains("\"status\"")) {
-                        status = part.split(":")[1].replace("\"", "").trim();
-                    }
-                }
-                
-                if (!orderId.isEmpty()) {
-                    orderList.add(new Object[] {orderId, items, orderDate, status});
-                }
-            }
-            
-            // 更新订单表格数据
-            ordersData = orderList.toArray(new Object[0][]);
-            if (ordersTableModel != null) {
-                ordersTableModel.setDataVector(ordersData, orderColumnNames);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+            outboxLabel.setText(rejected + " 笔订单上传失败");
+            outboxLabel.setToolTipText("服务器拒绝保存这些订单，可在\"我的订单\"中查看");
+            outboxLabel.setVisible(true);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long waited = Math.max(0, now - outbox.getOldestOrderTime()) / 1000;
+        StringBuilder text = new StringBuilder("待上传订单 ").append(depth).append(" 笔，最早 ");
+        if (waited < 60) {
+            text.append(waited).append(" 秒前");
+        } else if (waited < 3600) {
+            text.append(waited / 60).append(" 分钟前");
+        } else {
+            text.append(waited / 3600).append(" 小时前");
+        }
+        long retryAt = outbox.getNextRetryTime();
+        if (retryAt > 0) {
+            text.append("（").append(Math.max(1, (retryAt - now + 999) / 1000)).append(" 秒后重试）");
+        }
+        if (rejected > 0) {
+            text.append("；").append(rejected).append(" 笔上传失败");
+        }
+        outboxLabel.setText(text.toString());
+        String error = outbox.getLastError();
+        outboxLabel.setToolTipText(error != null ? "上传失败：" + error + "，点击立即重试" : "正在上传到服务器");
+        outboxLabel.setVisible(true);
+        if (!outboxTimer.isRunning()) {
+            outboxTimer.start();
         }
     }
 }
@@ -0,0 +1,356 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WireCodec - 商品目录与订单的紧凑二进制编码（与 JSON 格式并存，服务器支持时优先使用）
+ *
+ * 格式：
+ * - 每条消息以 [byte 魔数 0xB1][byte 编码版本] 开头。
+ * - 整数为 varint（每字节 7 位，低位在前）；可能为负的值（金额、库存、时间）先做 zigzag 变换。
+ * - 金额为以分表示的整数（定点数），不经过文本。
+ * - 字符串为 [varint 字节长度][UTF-8 字节]。
+ * - 取值有限的字符串（类别、状态、用户名、订单中的商品 id 与名称）按字典编码：[varint 编号]，
+ *   0 表示新字符串，其后跟字符串本身并加入字典；n 表示字典中的第 n 个。字典只在一条消息内有效。
+ * - 商品目录：目录版本、行数，每行为 id、名称、类别（字典）、价格、库存（未知为 -1）。
+ * - 订单列表：订单数，每个订单为订单号、用户名（字典）、下单时间（毫秒）、总价、状态（字典）、商品数，
+ *   每个商品为 id（字典）、名称（字典）、类别（字典）、单价、数量。
+ *
+ * 设计说明：
+ * - 二进制编码使用单独的操作码（见 `ServerClient`），请求中声明客户端支持的编码版本，
+ *   服务器以相同的魔数与版本开头作答；响应为空或开头不符（旧版服务器）时由调用方退回 JSON。
+ * - 解码直接在自己的字节缓冲区上进行，不经过 `DataInputStream`；重复出现的字符串复用字典中的同一实例。
+ */
+public class WireCodec {
+    static final int MAGIC = 0xB1;
+    static final int VERSION = 1;
+
+    private WireCodec() {
+    }
+
+    /**
+     * 逐行接收解码（或从 JSON 解析）出的商品：可以放入列表，也可以直接写入快照文件。
+     * 价格与库存以数值传递，接收方不需要再解析文本
+     */
+    public interface RowSink {
+        /**
+         * @param priceFen 单价（分）
+         * @param stock    库存，小于 0 表示未知
+         */
+        void accept(String id, String name, String category, long priceFen, int stock) throws IOException;
+    }
+
+    /**
+     * 上传订单的请求：逐个加入订单，按编码后的大小决定一批放多少个
+     */
+    static class OrderBatch {
+        private final Encoder body = new Encoder();
+        private int count;
+
+        /**
+         * 加入一个订单（状态按服务器上的最终状态"已完成"编码）
+         *
+         * @param maxBytes 编码后的大小上限；加入后超过上限时撤销并返回 false（第一个订单总是加入）
+         * @return 是否已加入
+         */
+        boolean add(OrderHistory.Order order, int maxBytes) {
+            int mark = body.size;
+            int dictMark = body.dictSize();
+            writeOrder(body, order, OrderHistory.STATUS_COMPLETED);
+            if (count > 0 && body.size > maxBytes) {
+                body.reset(mark, dictMark);
+                return false;
+            }
+            count++;
+            return true;
+        }
+
+        /** 已加入的订单数 */
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * 写出完整的请求（消息头、订单数、各订单）
+         */
+        void writeTo(OutputStream out) throws IOException {
+            Encoder head = new Encoder();
+            head.header();
+            head.varint(count);
+            head.writeTo(out);
+            body.writeTo(out);
+        }
+    }
+
+    private static void writeOrder(Encoder e, OrderHistory.Order order, String status) {
+        e.string(order.getOrderId());
+        e.dictString(order.getUsername() != null ? order.getUsername() : "");
+        e.zigzag(order.getOrderDate().getTime());
+        e.zigzag(order.getTotalFen());
+        e.dictString(status);
+        List<OrderHistory.OrderItem> items = order.getItems();
+        e.varint(items.size());
+        for (OrderHistory.OrderItem item : items) {
+            e.dictString(item.getId());
+            e.dictString(item.getName());
+            e.dictString(item.getCategory());
+            e.zigzag(item.getPriceFen());
+            e.varint(item.getQuantity());
+        }
+    }
+
+    /**
+     * 编码到可扩容的字节数组，支持撤销到之前的位置
+     */
+    private static class Encoder {
+        private byte[] buf = new byte[256];
+        private int size;
+        private final Map<String, Integer> dict = new HashMap<>();
+        private final List<String> dictOrder = new ArrayList<>();
+
+        void header() {
+            writeByte(MAGIC);
+            writeByte(VERSION);
+        }
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        void string(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void dictString(String s) {
+            if (s == null) {
+                s = "";
+            }
+            Integer index = dict.get(s);
+            if (index != null) {
+                varint(index);
+                return;
+            }
+            varint(0);
+            string(s);
+            dictOrder.add(s);
+            dict.put(s, dictOrder.size());
+        }
+
+        int dictSize() {
+            return dictOrder.size();
+        }
+
+        // 撤销到 mark 处，并移除之后加入字典的字符串
+        void reset(int mark, int dictMark) {
+            size = mark;
+            while (dictOrder.size() > dictMark) {
+                dict.remove(dictOrder.remove(dictOrder.size() - 1));
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(buf, 0, size);
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                byte[] grown = new byte[Math.max(buf.length * 2, size + extra)];
+                System.arraycopy(buf, 0, grown, 0, size);
+                buf = grown;
+            }
+        }
+    }
+
+    /**
+     * 从输入流解码一条消息（边接收边解码）
+     */
+    static class Decoder implements Closeable {
+        private final InputStream in;
+        private final byte[] buf = new byte[8192];
+        private int pos;
+        private int limit;
+        private final List<String> dict = new ArrayList<>();
+
+        private Decoder(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * 读取并检查消息头
+         *
+         * @return 解码器；流为空或开头不是本编码（服务器不支持）时关闭流并返回 null
+         */
+        static Decoder open(InputStream in) throws IOException {
+            Decoder decoder = new Decoder(in);
+            if (!decoder.fill(2) || (decoder.buf[0] & 0xFF) != MAGIC || decoder.buf[1] != VERSION) {
+                in.close();
+                return null;
+            }
+            decoder.pos = 2;
+            return decoder;
+        }
+
+        /**
+         * 解码商品目录，逐行交给 sink（价格与库存不转换为文本）
+         *
+         * @return 目录版本
+         */
+        long readCatalog(RowSink sink) throws IOException {
+            long version = varint();
+            int count = varint32();
+            for (int i = 0; i < count; i++) {
+                String id = string();
+                String name = string();
+                String category = dictString();
+                long priceFen = zigzag();
+                long stock = zigzag();
+                sink.accept(id, name, category, priceFen, (int) Math.max(-1, Math.min(Integer.MAX_VALUE, stock)));
+            }
+            return version;
+        }
+
+        /**
+         * 解码订单列表（按服务器返回的顺序）
+         */
+        List<OrderHistory.Order> readOrders() throws IOException {
+            int count = varint32();
+            List<OrderHistory.Order> orders = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                String orderId = string();
+                String username = dictString();
+                Date orderDate = new Date(zigzag());
+                long totalFen = zigzag();
+                String status = dictString();
+                int itemCount = varint32();
+                List<OrderHistory.OrderItem> items = new ArrayList<>(Math.min(itemCount, 64));
+                for (int j = 0; j < itemCount; j++) {
+                    String id = dictString();
+                    String name = dictString();
+                    String category = dictString();
+                    long priceFen = zigzag();
+                    items.add(new OrderHistory.OrderItem(id, name, category, priceFen, varint32()));
+                }
+                orders.add(new OrderHistory.Order(orderId, items, orderDate, totalFen, status,
+                        username.isEmpty() ? null : username));
+            }
+            return orders;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos == limit && !fill(1)) {
+                    throw new EOFException("二进制数据不完整");
+                }
+                byte b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("二进制数据格式错误：整数过长");
+        }
+
+        private int varint32() throws IOException {
+            long value = varint();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("二进制数据格式错误：数值超出范围");
+            }
+            return (int) value;
+        }
+
+        private long zigzag() throws IOException {
+            long value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private String string() throws IOException {
+            int length = varint32();
+            if (length <= buf.length) {
+                if (!fill(length)) {
+                    throw new EOFException("二进制数据不完整");
+                }
+                String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+                pos += length;
+                return s;
+            }
+            // 超过缓冲区的长字符串：先取出缓冲区中的部分，再直接读取剩余字节
+            byte[] bytes = new byte[length];
+            int n = limit - pos;
+            System.arraycopy(buf, pos, bytes, 0, n);
+            pos = limit;
+            while (n < length) {
+                int read = in.read(bytes, n, length - n);
+                if (read < 0) {
+                    throw new EOFException("二进制数据不完整");
+                }
+                n += read;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private String dictString() throws IOException {
+            int index = varint32();
+            if (index == 0) {
+                String s = string();
+                dict.add(s);
+                return s;
+            }
+            if (index > dict.size()) {
+                throw new IOException("二进制数据格式错误：字典编号 " + index);
+            }
+            return dict.get(index - 1);
+        }
+
+        // 确保缓冲区中至少有 n 个未读字节（n 不超过缓冲区大小）；数据不足时返回 false
+        private boolean fill(int n) throws IOException {
+            if (limit - pos >= n) {
+                return true;
+            }
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            while (limit < n) {
+                int read = in.read(buf, limit, buf.length - limit);
+                if (read < 0) {
+                    return false;
+                }
+                limit += read;
+            }
+            return true;
+        }
+    }
+}